@@ -0,0 +1,65 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.StateTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the data lookups used by the generators: selecting a random reference from a table, resolving the
+ * country's snapshot, and materializing a value as a <code>String</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DataLookupBenchmark {
+
+    private final RandomSource random = RandomSource.threadLocal();
+    private CountryData data;
+
+    @Setup
+    public void loadData() {
+        data = AddressData.getCountryData(AddressData.CAN);
+    }
+
+    @Benchmark
+    public CountryData countryData() {
+        return AddressData.getCountryData(AddressData.CAN);
+    }
+
+    @Benchmark
+    public int randomStreetRef() {
+        return data.getStreets(AddressData.FR).randomRef(random);
+    }
+
+    @Benchmark
+    public int randomStateCodeRef() {
+        StateTable states = data.getStates();
+        return states.codeRef(random.nextInt(states.size()));
+    }
+
+    @Benchmark
+    public String randomStreet() {
+        return data.getDictionary().get(data.getStreets(AddressData.FR).randomRef(random));
+    }
+
+    @Benchmark
+    public char randomLetter() {
+        return AddressData.getRandomLetter(random);
+    }
+}
@@ -0,0 +1,74 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the <code>Address</code> constructors and of the <code>AddressFactory</code> dispatch by country.
+ * Country data is loaded during setup, so the benchmarks measure generation only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+    private final RandomSource random = RandomSource.threadLocal();
+    private long index;
+
+    @Setup
+    public void loadData() {
+        for (String countryCode : CountryRegistry.getCountryCodes()) {
+            AddressData.getCountryData(countryCode);
+        }
+    }
+
+    @Benchmark
+    public Address createAddressUSA() {
+        return new AddressUSA(random);
+    }
+
+    @Benchmark
+    public Address createAddressCAN() {
+        return new AddressCAN(random);
+    }
+
+    @Benchmark
+    public Address createAddressMEX() {
+        return new AddressMEX(random);
+    }
+
+    @Benchmark
+    public Address createAddressNLD() {
+        return new AddressNLD(random);
+    }
+
+    @Benchmark
+    public Address factoryByCountry() {
+        return AddressFactory.createAddress("usa", random);
+    }
+
+    @Benchmark
+    public Address factoryRandomCountry() {
+        return AddressFactory.createAddress(AddressData.DEFAULT, random);
+    }
+
+    @Benchmark
+    public Address factorySeededIndex() {
+        return AddressFactory.createAddress(AddressData.DEFAULT, RandomSource.forIndex(42, index++));
+    }
+}
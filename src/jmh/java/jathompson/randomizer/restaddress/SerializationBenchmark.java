@@ -0,0 +1,63 @@
+package jathompson.randomizer.restaddress;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of serializing an <code>Address</code> with Jackson, configured like the application, and with
+ * <code>AddressJsonWriter</code>. The addresses are generated during setup from a fixed seed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private static final int ADDRESSES = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final JsonOutput output = new JsonOutput(JsonOutput.FLUSH_THRESHOLD);
+    private final Address[] addresses = new Address[ADDRESSES];
+    private int next;
+
+    @Setup
+    public void createAddresses() {
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = AddressFactory.createAddress(AddressData.DEFAULT, RandomSource.forIndex(7, i));
+        }
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(nextAddress());
+    }
+
+    @Benchmark
+    public int addressJsonWriter() {
+        output.reset();
+        AddressJsonWriter.write(nextAddress(), output);
+        return output.size();
+    }
+
+    private Address nextAddress() {
+        return addresses[next++ & (ADDRESSES - 1)];
+    }
+}
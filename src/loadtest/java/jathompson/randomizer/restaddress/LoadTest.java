@@ -0,0 +1,271 @@
+package jathompson.randomizer.restaddress;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * HTTP load generator for the REST service. Unless <code>--url</code> is specified, the application is started in
+ * this JVM on a random port; arguments which are not options of the load test, e.g.
+ * <code>--server.tomcat.threads.max=50</code> or <code>--randomizer.json.direct-writer.enabled=false</code>, are passed
+ * to the application so settings can be compared on identical workloads.
+ * </p>
+ * <p>
+ * Each of <code>--concurrency</code> workers sends requests back to back, or at a fixed total <code>--rate</code> of
+ * requests per second. At a fixed rate latency is measured from the time a request was scheduled, so a stalled server
+ * is not hidden by workers waiting for it. Latencies after <code>--warmup</code> are recorded in an HdrHistogram and
+ * written with the throughput to <code>--report</code>.
+ * </p>
+ * <p>
+ * The bytes of the response bodies are counted as received, so with <code>--compression=true</code>, which sends
+ * <code>Accept-Encoding: gzip</code>, the report compares the bytes on the wire and latency of the
+ * <code>performance</code> profile with those of the default settings, e.g. for a bulk <code>--path</code>.
+ * </p>
+ * <p>
+ * Run with <code>mvn -P loadtest test-compile exec:exec@loadtest -Dloadtest.args="--concurrency=32 --countries=USA:3,CAN:1"</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class LoadTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        //empty url starts the application in this JVM
+        DEFAULTS.put("url", "");
+        DEFAULTS.put("path", "/randomizer/address");
+        //comma separated country:weight pairs, or random to let the service select the country
+        DEFAULTS.put("countries", "random");
+        DEFAULTS.put("concurrency", "16");
+        //total requests per second, 0 sends requests back to back
+        DEFAULTS.put("rate", "0");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("keepAlive", "true");
+        DEFAULTS.put("accept", "application/json");
+        //sends Accept-Encoding: gzip, the compressed bodies are counted and discarded without being inflated
+        DEFAULTS.put("compression", "false");
+        DEFAULTS.put("report", "target/loadtest-report.txt");
+    }
+
+    private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String key = arg.startsWith("--") && separator > 2 ? arg.substring(2, separator) : null;
+            if (key != null && DEFAULTS.containsKey(key)) {
+                options.put(key, arg.substring(separator + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        boolean keepAlive = Boolean.parseBoolean(options.get("keepAlive"));
+        //HttpURLConnection keeps http.maxConnections idle connections per host, one per worker
+        System.setProperty("http.keepAlive", String.valueOf(keepAlive));
+        System.setProperty("http.maxConnections", String.valueOf(concurrency));
+
+        ConfigurableApplicationContext context = null;
+        String url = options.get("url");
+        if (url.isEmpty()) {
+            applicationArgs.add("--server.port=0");
+            context = SpringApplication.run(RestAddressApplication.class, applicationArgs.toArray(new String[0]));
+            url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            run(url, options, applicationArgs, concurrency, keepAlive);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static void run(String url, Map<String, String> options, List<String> applicationArgs, int concurrency,
+                            boolean keepAlive) throws Exception {
+        String[] targets = targets(url + options.get("path"), options.get("countries"));
+        double rate = Double.parseDouble(options.get("rate"));
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long end = measureStart + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        LOGGER.info("Load testing {} with {} workers for {}s after {}s warmup", url, concurrency, options.get("duration"), options.get("warmup"));
+
+        Worker[] workers = new Worker[concurrency];
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            //spread the scheduled requests of the workers over the interval
+            workers[i] = new Worker(targets, keepAlive, options.get("accept"), Boolean.parseBoolean(options.get("compression")),
+                    start + intervalNanos * i / concurrency, intervalNanos, measureStart, end);
+            threads[i] = new Thread(workers[i], "load-test-" + i);
+            threads[i].start();
+        }
+        Histogram histogram = new Histogram(HIGHEST_LATENCY_NANOS, 3);
+        long requests = 0;
+        long errors = 0;
+        long bytes = 0;
+        for (int i = 0; i < concurrency; i++) {
+            threads[i].join();
+            histogram.add(workers[i].histogram);
+            requests += workers[i].requests;
+            errors += workers[i].errors;
+            bytes += workers[i].bytes;
+        }
+        long bytesPerRequest = requests == 0 ? 0 : bytes / requests;
+        double seconds = (end - measureStart) / 1e9;
+
+        Path report = Path.of(options.get("report"));
+        if (report.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(report.toAbsolutePath().getParent());
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(report), true, StandardCharsets.UTF_8)) {
+            out.printf("Load test %s%n", Instant.now());
+            options.forEach((key, value) -> out.printf("%s=%s%n", key, value));
+            out.printf("application args=%s%n%n", String.join(" ", applicationArgs));
+            out.printf("requests=%d errors=%d requests/sec=%.1f%n", requests, errors, requests / seconds);
+            out.printf("body bytes/request=%d MB/sec=%.2f%n", bytesPerRequest, bytes / seconds / 1e6);
+            out.printf("latency ms p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n%n", millis(histogram, 50),
+                    millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / 1e6);
+            histogram.outputPercentileDistribution(out, 1e6);
+        }
+        LOGGER.info("{} requests, {} errors, {} requests/sec, {} body bytes/request, p50 {} ms, p99 {} ms, p99.9 {} ms, report written to {}",
+                requests, errors, String.format("%.1f", requests / seconds), bytesPerRequest, millis(histogram, 50),
+                millis(histogram, 99), millis(histogram, 99.9), report);
+    }
+
+    //one url per unit of weight, so a uniformly selected target follows the country mix
+    private static String[] targets(String base, String countries) {
+        if (countries.equalsIgnoreCase("random")) {
+            return new String[]{base};
+        }
+        String separator = base.contains("?") ? "&" : "?";
+        List<String> targets = new ArrayList<>();
+        for (String country : countries.split(",")) {
+            String[] weighted = country.trim().split(":");
+            int weight = weighted.length > 1 ? Integer.parseInt(weighted[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                targets.add(base + separator + "country=" + weighted[0]);
+            }
+        }
+        return targets.toArray(new String[0]);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static final class Worker implements Runnable {
+        private final String[] targets;
+        private final boolean keepAlive;
+        private final String accept;
+        private final boolean compression;
+        private final long intervalNanos;
+        private final long measureStart;
+        private final long end;
+        private final Histogram histogram = new Histogram(HIGHEST_LATENCY_NANOS, 3);
+        private final byte[] buffer = new byte[8192];
+        private long next;
+        private long requests;
+        private long errors;
+        private long bytes;
+
+        private Worker(String[] targets, boolean keepAlive, String accept, boolean compression, long first,
+                       long intervalNanos, long measureStart, long end) {
+            this.targets = targets;
+            this.keepAlive = keepAlive;
+            this.accept = accept;
+            this.compression = compression;
+            this.next = first;
+            this.intervalNanos = intervalNanos;
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long scheduled;
+                if (intervalNanos > 0) {
+                    scheduled = next;
+                    next += intervalNanos;
+                    long wait;
+                    while ((wait = scheduled - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    scheduled = System.nanoTime();
+                }
+                if (scheduled >= end) {
+                    return;
+                }
+                long received = request(targets[ThreadLocalRandom.current().nextInt(targets.length)]);
+                if (scheduled >= measureStart) {
+                    histogram.recordValue(Math.min(System.nanoTime() - scheduled, HIGHEST_LATENCY_NANOS));
+                    requests++;
+                    if (received < 0) {
+                        errors++;
+                    } else {
+                        bytes += received;
+                    }
+                }
+            }
+        }
+
+        //reads the whole response so the connection can be reused, returns its body bytes or -1 on error
+        private long request(String target) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(target).openConnection();
+                connection.setRequestProperty("Accept", accept);
+                if (compression) {
+                    connection.setRequestProperty("Accept-Encoding", "gzip");
+                }
+                if (!keepAlive) {
+                    connection.setRequestProperty("Connection", "close");
+                }
+                int status = connection.getResponseCode();
+                long received = 0;
+                try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    if (body != null) {
+                        for (int read; (read = body.read(buffer)) >= 0; ) {
+                            received += read;
+                        }
+                    }
+                }
+                return status == 200 ? received : -1;
+            } catch (IOException ioException) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                return -1;
+            }
+        }
+    }
+}
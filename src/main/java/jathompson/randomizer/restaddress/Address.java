@@ -1,8 +1,15 @@
 package jathompson.randomizer.restaddress;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import jathompson.randomizer.restaddress.util.AddressData;
-
-import java.util.concurrent.ThreadLocalRandom;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.FieldBuilder;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.StateTable;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 
 /**
@@ -12,43 +19,66 @@ import java.util.concurrent.ThreadLocalRandom;
  * @author Jennifer A Thompson
  * @version 1.0
  */
+//fields loaded from AddressData are stored as dictionary references, keep the order of the return object definition
+@JsonPropertyOrder({"house", "street", "postalCode", "city", "county", "state", "stateCode", "country", "countryCode"})
 public abstract class Address implements AddressConstants {
+    /**
+     * Value of <code>houseInStreet</code> when the street is only the street name.
+     */
+    protected static final int HOUSE_NOT_IN_STREET = 0;
+    /**
+     * Value of <code>houseInStreet</code> when the house number is written before the street name.
+     */
+    protected static final int HOUSE_BEFORE_STREET = 1;
+    /**
+     * Value of <code>houseInStreet</code> when the house number is written after the street name.
+     */
+    protected static final int HOUSE_AFTER_STREET = 2;
+
     /**
      * House or street number.
      */
     protected String house;
     /**
-     * Street name (in practice may also contain street number).
+     * Dictionary reference of the street name.
      */
-    protected String street;
+    protected int streetRef = Dictionary.NO_VALUE;
+    /**
+     * Whether the street (in practice may also contain street number) includes the house number, and where.
+     */
+    protected int houseInStreet = HOUSE_NOT_IN_STREET;
     /**
      * An alphanumeric string included in a postal address to facilitate mail sorting (a.k.a. post code, postcode, or ZIP code).
      */
     protected String postalCode;
     /**
-     * The name of the primary locality of the place.
+     * Dictionary reference of the name of the primary locality of the place.
      */
-    protected String city;
+    protected int cityRef = Dictionary.NO_VALUE;
     /**
-     * A division of a state; typically a secondary-level administrative division of a country or equivalent.
+     * Dictionary reference of a division of a state; typically a secondary-level administrative division of a country or equivalent.
      */
-    protected String county;
+    protected int countyRef = Dictionary.NO_VALUE;
     /**
-     * A division of a country; typically a first-level administrative division of a country and/or a geographical region.
+     * Dictionary reference of a division of a country; typically a first-level administrative division of a country and/or a geographical region.
      */
-    protected String state;
+    protected int stateRef = Dictionary.NO_VALUE;
     /**
-     * A code/abbreviation for the state division of a country.
+     * Dictionary reference of a code/abbreviation for the state division of a country.
      */
-    protected String stateCode;
+    protected int stateCodeRef = Dictionary.NO_VALUE;
     /**
-     * A code/abbreviation for the state division of a country.
+     * Dictionary reference of the name of the country.
      */
-    protected String country;
+    protected int countryRef = Dictionary.NO_VALUE;
     /**
      * A three-letter country code following the ISO 3166-1 alpha-3 code format.
      */
     protected String countryCode;
+    /**
+     * Dictionary of the country's data, resolves the references of this address.
+     */
+    protected Dictionary dictionary;
 
     public Address(String countryCode) {}
 
@@ -64,43 +94,119 @@ public abstract class Address implements AddressConstants {
      *
      * For house numbers consisting of 3 or more digits, a hyphen will be pseudo-randomly inserted into the middle
      * of the house number at a percentage configured by <code>HOUSE_INSERT_HYPHEN_PERCENT</code>.
+     *
+     * @param random source of pseudo-random numbers
      */
-    protected void createHouse(){
+    protected void createHouse(RandomSource random){
         //vary the number of digits in a house number
-        int digits = ThreadLocalRandom.current().nextInt(AddressConstants.NUM_HOUSE_DIGITS) + 1;
+        int digits = random.nextInt(AddressConstants.NUM_HOUSE_DIGITS) + 1;
         int power10=1;
         for (int i=0; i<digits;i++){
             power10*=10;
         }
-        house = String.valueOf(ThreadLocalRandom.current().nextInt(power10)+1);
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.HOUSE_APPEND_LETTER_PERCENT){
-            house = house.concat(String.valueOf(AddressData.getRandomLetter()));
+        FieldBuilder builder = FieldBuilder.get().append(random.nextInt(power10)+1);
+        int numberLength = builder.length();
+        if (random.nextInt(100) < AddressConstants.HOUSE_APPEND_LETTER_PERCENT){
+            builder.append(AddressData.getRandomLetter(random));
         }
-        if (digits > 2 && ThreadLocalRandom.current().nextInt(100) < AddressConstants.HOUSE_INSERT_HYPHEN_PERCENT){
-            StringBuilder temp = new StringBuilder(house);
-            house = temp.insert(ThreadLocalRandom.current().nextInt(digits-2) + 1, "-").toString();
+        if (digits > 2 && random.nextInt(100) < AddressConstants.HOUSE_INSERT_HYPHEN_PERCENT){
+            //the number can have fewer digits than requested, only insert between digits
+            int hyphen = random.nextInt(digits-2) + 1;
+            if (hyphen < numberLength){
+                builder.insert(hyphen, '-');
+            }
         }
+        house = builder.toString();
     }
 
     protected void prependHouseToStreet(){
-        if (house !=null && street!=null){
-            street = new StringBuilder(street).insert(0," ").insert(0, house).toString();
+        if (house !=null && streetRef != Dictionary.NO_VALUE){
+            houseInStreet = HOUSE_BEFORE_STREET;
         }
 
     }
 
     protected void appendHouseToStreet(){
-        if (house !=null && street!=null){
-            street = new StringBuilder(street).append(" ").append(house).toString();
+        if (house !=null && streetRef != Dictionary.NO_VALUE){
+            houseInStreet = HOUSE_AFTER_STREET;
+        }
+    }
+
+    /**
+     * Chooses the state row of a constrained address from the state index of the country data. The generated row is
+     * drawn in any case, keeping the draws of the remaining fields aligned with the unconstrained address where possible.
+     *
+     * @param data data of the address's country
+     * @param constraints requested field values
+     * @param row generated state row
+     * @param random source of pseudo-random numbers
+     * @return generated row, or a row of the requested state
+     * @throws ResponseStatusException if the requested state does not exist
+     */
+    protected static int constrainStateRow(CountryData data, AddressConstraints constraints, int row, RandomSource random){
+        if (constraints.getState() == null){
+            return row;
+        }
+        int[] rows = data.findStateRows(constraints.getState());
+        if (rows == null){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "State does not exist");
+        }
+        return rows.length == 1 ? rows[0] : rows[random.nextInt(rows.length)];
+    }
+
+    /**
+     * Includes the state code of a constrained state when neither its name nor code was drawn.
+     *
+     * @param states state table of the address's country
+     * @param row state row of the address
+     * @param constraints requested field values
+     */
+    protected void includeConstrainedState(StateTable states, int row, AddressConstraints constraints){
+        if (constraints.getState() != null && stateRef == Dictionary.NO_VALUE && stateCodeRef == Dictionary.NO_VALUE){
+            stateCodeRef = states.codeRef(row);
         }
     }
 
+    /**
+     * Chooses the city of a constrained address from the city index of the country data.
+     *
+     * @param data data of the address's country
+     * @param constraints requested field values
+     * @param language language of the address
+     * @param ref generated city reference
+     * @return generated reference, or the reference of the requested city
+     * @throws ResponseStatusException if the requested city does not exist
+     */
+    protected static int constrainCity(CountryData data, AddressConstraints constraints, String language, int ref){
+        if (constraints.getCity() == null){
+            return ref;
+        }
+        int cityRef = data.findCityRef(language, constraints.getCity());
+        if (cityRef == Dictionary.NO_VALUE){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "City does not exist");
+        }
+        return cityRef;
+    }
+
     public String getHouse(){
         return house;
     }
 
+    /**
+     * Street name, including the house number if it was prepended or appended to the street.
+     *
+     * @return street
+     */
     public String getStreet(){
-        return street;
+        String street = dictionary.get(streetRef);
+        switch (houseInStreet){
+            case HOUSE_BEFORE_STREET:
+                return FieldBuilder.get().append(house).append(' ').append(street).toString();
+            case HOUSE_AFTER_STREET:
+                return FieldBuilder.get().append(street).append(' ').append(house).toString();
+            default:
+                return street;
+        }
     }
 
     public String getPostalCode(){
@@ -108,27 +214,40 @@ public abstract class Address implements AddressConstants {
     }
 
     public String getCity(){
-        return city;
+        return dictionary.get(cityRef);
     }
 
     public String getCounty(){
-        return county;
+        return dictionary.get(countyRef);
     }
 
     public String getState(){
-        return state;
+        return dictionary.get(stateRef);
     }
 
     public String getStateCode(){
-        return stateCode;
+        return dictionary.get(stateCodeRef);
     }
 
     public String getCountry(){
-        return country;
+        return dictionary.get(countryRef);
     }
 
     public String getCountryCode(){
         return countryCode;
     }
 
+    /**
+     * 64-bit hash of the fields a loader would put a unique constraint on: country code, street name, house number
+     * and postal code. Whether the house number is also written in the street does not change the key.
+     *
+     * @return key of the address for a <code>UniqueFilter</code>
+     */
+    public long uniqueKey(){
+        long hash = UniqueFilter.hash(UniqueFilter.HASH_SEED, countryCode);
+        hash = dictionary.hash(hash, streetRef);
+        hash = UniqueFilter.hash(hash, house);
+        return UniqueFilter.hash(hash, postalCode);
+    }
+
 }
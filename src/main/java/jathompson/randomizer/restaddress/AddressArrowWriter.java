@@ -0,0 +1,199 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.compression.NoCompressionCodec;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Writes blocks of an <code>AddressBatch</code> to an Arrow IPC file, one record batch per block.
+ * </p>
+ * <p>
+ * Every address has the nullable UTF-8 columns of <code>SCHEMA</code>, in the order of the JSON fields. The bytes of a
+ * column are gathered for the whole block into one buffer, copying the values loaded by <code>AddressData</code> from
+ * the country's <code>Dictionary</code> by reference, before they are set in the column's vector. The buffers of each
+ * record batch are compressed with zstd when requested, as defined by the Arrow IPC format, so the file is read by any
+ * Arrow implementation with zstd support, e.g. <code>pyarrow.ipc.open_file</code>.
+ * </p>
+ * <p>
+ * Not thread-safe, a writer belongs to one partition of an export job.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressArrowWriter implements Closeable {
+
+    /**
+     * Columns of the written files, named as the JSON fields.
+     */
+    public static final Schema SCHEMA = new Schema(List.of(column("house"), column("street"), column("postalCode"),
+            column("city"), column("county"), column("state"), column("stateCode"), column("country"), column("countryCode")));
+
+    private static final int HOUSE = 0;
+    private static final int STREET = 1;
+    private static final int POSTAL_CODE = 2;
+    private static final int CITY = 3;
+    private static final int COUNTY = 4;
+    private static final int STATE = 5;
+    private static final int STATE_CODE = 6;
+    private static final int COUNTRY = 7;
+    private static final int COUNTRY_CODE = 8;
+    private static final int COLUMNS = 9;
+
+    private final BufferAllocator allocator;
+    private final VectorSchemaRoot root;
+    private final ArrowFileWriter writer;
+    private final VarCharVector[] vectors = new VarCharVector[COLUMNS];
+    //UTF-8 bytes of each column of the block, and the end of each row's value, negative for null
+    private final JsonOutput[] values = new JsonOutput[COLUMNS];
+    private int[][] ends = new int[COLUMNS][0];
+
+    /**
+     * Starts an Arrow IPC file.
+     *
+     * @param channel channel receiving the file, closed with the writer
+     * @param zstd whether the buffers of each record batch are compressed with zstd
+     * @throws IOException if the channel cannot be written
+     */
+    public AddressArrowWriter(WritableByteChannel channel, boolean zstd) throws IOException {
+        allocator = new RootAllocator();
+        root = VectorSchemaRoot.create(SCHEMA, allocator);
+        for (int column = 0; column < COLUMNS; column++) {
+            vectors[column] = (VarCharVector) root.getVector(column);
+            values[column] = new JsonOutput(ExportJobService.WRITE_BUFFER);
+        }
+        writer = zstd ? new ArrowFileWriter(root, null, channel, Map.of(), IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE,
+                CompressionUtil.CodecType.ZSTD)
+                : new ArrowFileWriter(root, null, channel, Map.of(), IpcOption.DEFAULT, NoCompressionCodec.Factory.INSTANCE,
+                CompressionUtil.CodecType.NO_COMPRESSION);
+        writer.start();
+    }
+
+    /**
+     * Writes the first rows of a batch as one record batch.
+     *
+     * @param batch batch holding the addresses
+     * @param count number of rows to write
+     * @throws IOException if the channel cannot be written
+     */
+    public void write(AddressBatch batch, int count) throws IOException {
+        if (ends[0].length < count) {
+            ends = new int[COLUMNS][count];
+        }
+        for (JsonOutput column : values) {
+            column.reset();
+        }
+        for (int row = 0; row < count; row++) {
+            writeRow(batch, row);
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            VarCharVector vector = vectors[column];
+            vector.reset();
+            byte[] bytes = values[column].toByteArray();
+            int[] columnEnds = ends[column];
+            int start = 0;
+            for (int row = 0; row < count; row++) {
+                int end = columnEnds[row];
+                if (end < 0) {
+                    vector.setNull(row);
+                } else {
+                    vector.setSafe(row, bytes, start, end - start);
+                    start = end;
+                }
+            }
+            vector.setValueCount(count);
+        }
+        root.setRowCount(count);
+        writer.writeBatch();
+    }
+
+    /**
+     * Writes the footer of the file and releases the vectors.
+     *
+     * @throws IOException if the channel cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.end();
+        } finally {
+            writer.close();
+            root.close();
+            allocator.close();
+        }
+    }
+
+    private void writeRow(AddressBatch batch, int row) {
+        Dictionary dictionary = batch.dictionary(row);
+        writeField(HOUSE, row, batch, AddressBatch.HOUSE);
+        if (batch.streetRef(row) == Dictionary.NO_VALUE){
+            ends[STREET][row] = -1;
+        } else {
+            JsonOutput street = values[STREET];
+            if (batch.houseInStreet(row) == Address.HOUSE_BEFORE_STREET){
+                batch.writeUtf8(row, AddressBatch.HOUSE, street);
+                street.writeByte(' ');
+            }
+            dictionary.writeUtf8(batch.streetRef(row), street);
+            if (batch.houseInStreet(row) == Address.HOUSE_AFTER_STREET){
+                street.writeByte(' ');
+                batch.writeUtf8(row, AddressBatch.HOUSE, street);
+            }
+            ends[STREET][row] = street.size();
+        }
+        writeField(POSTAL_CODE, row, batch, AddressBatch.POSTAL_CODE);
+        writeField(CITY, row, dictionary, batch.cityRef(row));
+        writeField(COUNTY, row, dictionary, batch.countyRef(row));
+        writeField(STATE, row, dictionary, batch.stateRef(row));
+        writeField(STATE_CODE, row, dictionary, batch.stateCodeRef(row));
+        writeField(COUNTRY, row, dictionary, batch.countryRef(row));
+        String countryCode = batch.countryCode(row);
+        if (countryCode == null){
+            ends[COUNTRY_CODE][row] = -1;
+        } else {
+            values[COUNTRY_CODE].writeUtf8(countryCode);
+            ends[COUNTRY_CODE][row] = values[COUNTRY_CODE].size();
+        }
+    }
+
+    private void writeField(int column, int row, AddressBatch batch, int field) {
+        if (batch.isNull(row, field)){
+            ends[column][row] = -1;
+        } else {
+            batch.writeUtf8(row, field, values[column]);
+            ends[column][row] = values[column].size();
+        }
+    }
+
+    private void writeField(int column, int row, Dictionary dictionary, int ref) {
+        if (ref == Dictionary.NO_VALUE){
+            ends[column][row] = -1;
+        } else {
+            dictionary.writeUtf8(ref, values[column]);
+            ends[column][row] = values[column].size();
+        }
+    }
+
+    private static Field column(String name) {
+        return new Field(name, FieldType.nullable(ArrowType.Utf8.INSTANCE), null);
+    }
+}
@@ -0,0 +1,403 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.FieldBuilder;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * Columnar batch of addresses used by the bulk and export paths. Instead of one <code>Address</code> object and its
+ * house number and postal code strings per address, the batch keeps one primitive array per field: the dictionary
+ * references of the values loaded by <code>AddressData</code> in <code>int</code> arrays, house numbers and postal
+ * codes as UTF-8 bytes packed into one shared array, and the country of each address as an index into a small table
+ * of dictionaries and country codes. A batch of a million addresses is a few dozen arrays rather than millions of
+ * objects.
+ * </p>
+ * <p>
+ * <code>AddressJsonWriter</code> and <code>AddressCsvWriter</code> write the rows of a batch directly from its
+ * columns, strings are only materialized for the streets which include the house number and for values needing
+ * escaping. The batch is also a read-only <code>List</code> of addresses, whose elements are created on access, so it
+ * can be returned wherever a list of addresses is expected, e.g. to Jackson. A batch is not thread-safe, it can be
+ * reused with <code>clear</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressBatch extends AbstractList<Address> implements RandomAccess {
+    /**
+     * Text field of the house number.
+     */
+    static final int HOUSE = 0;
+    /**
+     * Text field of the postal code.
+     */
+    static final int POSTAL_CODE = 1;
+
+    //flags of a row: houseInStreet in the two low bits, then a null and an escaped bit per text field
+    private static final int HOUSE_IN_STREET_MASK = 0x3;
+    private static final int NULL_FLAG = 0x4;
+    private static final int ESCAPED_FLAG = 0x8;
+    private static final int TEXT_FIELDS = 2;
+    //average bytes of the house number and postal code of a row, sizes the text column
+    private static final int TEXT_BYTES_PER_ROW = 12;
+    //countries are stored as a byte index
+    private static final int MAX_COUNTRIES = 256;
+
+    private int size;
+    private byte[] countries;
+    private byte[] flags;
+    private int[] streetRefs;
+    private int[] cityRefs;
+    private int[] countyRefs;
+    private int[] stateRefs;
+    private int[] stateCodeRefs;
+    private int[] countryRefs;
+    //end of each text field in text, the fields of row r are at 2r and 2r + 1
+    private int[] textEnds;
+    private byte[] text;
+    private int textSize;
+    //a country is a dictionary and country code, a reload of the data during the batch adds a country
+    private Dictionary[] dictionaries = new Dictionary[4];
+    private String[] countryCodes = new String[4];
+    private int countryCount;
+    private int lastCountry = -1;
+
+    /**
+     * Creates an empty batch sized for the specified number of addresses, it grows beyond it as needed.
+     *
+     * @param capacity expected number of addresses
+     */
+    public AddressBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        countries = new byte[capacity];
+        flags = new byte[capacity];
+        streetRefs = new int[capacity];
+        cityRefs = new int[capacity];
+        countyRefs = new int[capacity];
+        stateRefs = new int[capacity];
+        stateCodeRefs = new int[capacity];
+        countryRefs = new int[capacity];
+        textEnds = new int[capacity * TEXT_FIELDS];
+        text = new byte[capacity * TEXT_BYTES_PER_ROW];
+    }
+
+    /**
+     * Appends the fields of an address. The address itself is not kept.
+     *
+     * @param address address to append
+     * @return true
+     */
+    @Override
+    public boolean add(Address address) {
+        if (size == flags.length) {
+            grow(flags.length + (flags.length >> 1) + 1);
+        }
+        int row = size;
+        countries[row] = (byte) country(address.dictionary, address.countryCode);
+        streetRefs[row] = address.streetRef;
+        cityRefs[row] = address.cityRef;
+        countyRefs[row] = address.countyRef;
+        stateRefs[row] = address.stateRef;
+        stateCodeRefs[row] = address.stateCodeRef;
+        countryRefs[row] = address.countryRef;
+        int rowFlags = address.houseInStreet;
+        rowFlags |= appendText(row, HOUSE, address.house);
+        rowFlags |= appendText(row, POSTAL_CODE, address.postalCode);
+        flags[row] = (byte) rowFlags;
+        size = row + 1;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Appends the addresses of another batch by copying its columns, e.g. to join the slices of a batch generated in
+     * parallel in order.
+     *
+     * @param other batch whose addresses are appended, it is not modified
+     */
+    public void append(AddressBatch other) {
+        int count = other.size;
+        if (size + count > flags.length) {
+            grow(size + count);
+        }
+        //the countries of the other batch are usually the same, at the same indexes
+        byte[] countryIndexes = new byte[other.countryCount];
+        boolean sameCountries = true;
+        for (int country = 0; country < other.countryCount; country++) {
+            countryIndexes[country] = (byte) country(other.dictionaries[country], other.countryCodes[country]);
+            sameCountries &= countryIndexes[country] == country;
+        }
+        if (sameCountries) {
+            System.arraycopy(other.countries, 0, countries, size, count);
+        } else {
+            for (int row = 0; row < count; row++) {
+                countries[size + row] = countryIndexes[other.countries[row] & 0xff];
+            }
+        }
+        System.arraycopy(other.flags, 0, flags, size, count);
+        System.arraycopy(other.streetRefs, 0, streetRefs, size, count);
+        System.arraycopy(other.cityRefs, 0, cityRefs, size, count);
+        System.arraycopy(other.countyRefs, 0, countyRefs, size, count);
+        System.arraycopy(other.stateRefs, 0, stateRefs, size, count);
+        System.arraycopy(other.stateCodeRefs, 0, stateCodeRefs, size, count);
+        System.arraycopy(other.countryRefs, 0, countryRefs, size, count);
+        ensureText(textSize + other.textSize);
+        System.arraycopy(other.text, 0, text, textSize, other.textSize);
+        int base = size * TEXT_FIELDS;
+        for (int index = 0; index < count * TEXT_FIELDS; index++) {
+            textEnds[base + index] = other.textEnds[index] + textSize;
+        }
+        textSize += other.textSize;
+        size += count;
+        modCount++;
+    }
+
+    /**
+     * Removes every address, keeping the allocated columns for the next batch.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        textSize = 0;
+        Arrays.fill(dictionaries, 0, countryCount, null);
+        countryCount = 0;
+        lastCountry = -1;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Materializes the address of a row.
+     *
+     * @param row index of the address
+     * @return address holding the values of the row
+     */
+    @Override
+    public Address get(int row) {
+        Objects.checkIndex(row, size);
+        return new BatchAddress(this, row);
+    }
+
+    Dictionary dictionary(int row) {
+        return dictionaries[countries[row] & 0xff];
+    }
+
+    String countryCode(int row) {
+        return countryCodes[countries[row] & 0xff];
+    }
+
+    int houseInStreet(int row) {
+        return flags[row] & HOUSE_IN_STREET_MASK;
+    }
+
+    int streetRef(int row) {
+        return streetRefs[row];
+    }
+
+    int cityRef(int row) {
+        return cityRefs[row];
+    }
+
+    int countyRef(int row) {
+        return countyRefs[row];
+    }
+
+    int stateRef(int row) {
+        return stateRefs[row];
+    }
+
+    int stateCodeRef(int row) {
+        return stateCodeRefs[row];
+    }
+
+    int countryRef(int row) {
+        return countryRefs[row];
+    }
+
+    /**
+     * Street of a row, including the house number if it was prepended or appended to the street.
+     *
+     * @param row index of the address
+     * @return street, materialized as a string
+     */
+    String street(int row) {
+        String street = dictionary(row).get(streetRefs[row]);
+        switch (houseInStreet(row)) {
+            case Address.HOUSE_BEFORE_STREET:
+                return FieldBuilder.get().append(text(row, HOUSE)).append(' ').append(street).toString();
+            case Address.HOUSE_AFTER_STREET:
+                return FieldBuilder.get().append(street).append(' ').append(text(row, HOUSE)).toString();
+            default:
+                return street;
+        }
+    }
+
+    boolean isNull(int row, int field) {
+        return (flags[row] & (NULL_FLAG << (field * 2))) != 0;
+    }
+
+    /**
+     * Text field of a row, materialized as a string.
+     *
+     * @param row index of the address
+     * @param field <code>HOUSE</code> or <code>POSTAL_CODE</code>
+     * @return value of the field, or null
+     */
+    String text(int row, int field) {
+        if (isNull(row, field)) {
+            return null;
+        }
+        int start = textStart(row, field);
+        return new String(text, start, textEnds[row * TEXT_FIELDS + field] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a text field of a row as a JSON string, copying its bytes unless they need escaping.
+     *
+     * @param row index of the address
+     * @param field <code>HOUSE</code> or <code>POSTAL_CODE</code>, not null
+     * @param output buffer receiving the string
+     */
+    void writeJson(int row, int field, JsonOutput output) {
+        if (isEscaped(row, field)) {
+            output.writeString(text(row, field));
+        } else {
+            int start = textStart(row, field);
+            output.writeQuoted(text, start, textEnds[row * TEXT_FIELDS + field] - start);
+        }
+    }
+
+    /**
+     * Writes a text field of a row as a quoted CSV field, copying its bytes unless they need escaping.
+     *
+     * @param row index of the address
+     * @param field <code>HOUSE</code> or <code>POSTAL_CODE</code>, not null
+     * @param output buffer receiving the field
+     */
+    void writeCsv(int row, int field, JsonOutput output) {
+        if (isEscaped(row, field)) {
+            output.writeCsvString(text(row, field));
+        } else {
+            int start = textStart(row, field);
+            output.writeQuoted(text, start, textEnds[row * TEXT_FIELDS + field] - start);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a text field of a row as they are.
+     *
+     * @param row index of the address
+     * @param field <code>HOUSE</code> or <code>POSTAL_CODE</code>, not null
+     * @param output buffer receiving the bytes
+     */
+    void writeUtf8(int row, int field, JsonOutput output) {
+        int start = textStart(row, field);
+        output.writeRaw(text, start, textEnds[row * TEXT_FIELDS + field] - start);
+    }
+
+    private boolean isEscaped(int row, int field) {
+        return (flags[row] & (ESCAPED_FLAG << (field * 2))) != 0;
+    }
+
+    private int textStart(int row, int field) {
+        int index = row * TEXT_FIELDS + field;
+        return index == 0 ? 0 : textEnds[index - 1];
+    }
+
+    //appends the value to the text column and returns its flags
+    private int appendText(int row, int field, String value) {
+        int rowFlags = 0;
+        if (value == null) {
+            rowFlags = NULL_FLAG << (field * 2);
+        } else {
+            int length = value.length();
+            ensureText(textSize + length);
+            int position = textSize;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                //printable ASCII other than quotes and backslashes is written as is in both JSON and CSV
+                if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\') {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    ensureText(textSize + utf8.length);
+                    System.arraycopy(utf8, 0, text, textSize, utf8.length);
+                    position = textSize + utf8.length;
+                    rowFlags = ESCAPED_FLAG << (field * 2);
+                    break;
+                }
+                text[position++] = (byte) c;
+            }
+            textSize = position;
+        }
+        textEnds[row * TEXT_FIELDS + field] = textSize;
+        return rowFlags;
+    }
+
+    private int country(Dictionary dictionary, String countryCode) {
+        if (lastCountry >= 0 && dictionaries[lastCountry] == dictionary && Objects.equals(countryCodes[lastCountry], countryCode)) {
+            return lastCountry;
+        }
+        for (int country = 0; country < countryCount; country++) {
+            if (dictionaries[country] == dictionary && Objects.equals(countryCodes[country], countryCode)) {
+                lastCountry = country;
+                return country;
+            }
+        }
+        if (countryCount == MAX_COUNTRIES) {
+            throw new IllegalStateException("A batch holds at most " + MAX_COUNTRIES + " countries and data snapshots");
+        }
+        if (countryCount == dictionaries.length) {
+            dictionaries = Arrays.copyOf(dictionaries, countryCount * 2);
+            countryCodes = Arrays.copyOf(countryCodes, countryCount * 2);
+        }
+        dictionaries[countryCount] = dictionary;
+        countryCodes[countryCount] = countryCode;
+        lastCountry = countryCount;
+        return countryCount++;
+    }
+
+    private void grow(int capacity) {
+        countries = Arrays.copyOf(countries, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        streetRefs = Arrays.copyOf(streetRefs, capacity);
+        cityRefs = Arrays.copyOf(cityRefs, capacity);
+        countyRefs = Arrays.copyOf(countyRefs, capacity);
+        stateRefs = Arrays.copyOf(stateRefs, capacity);
+        stateCodeRefs = Arrays.copyOf(stateCodeRefs, capacity);
+        countryRefs = Arrays.copyOf(countryRefs, capacity);
+        textEnds = Arrays.copyOf(textEnds, capacity * TEXT_FIELDS);
+    }
+
+    private void ensureText(int capacity) {
+        if (capacity > text.length) {
+            text = Arrays.copyOf(text, Math.max(capacity, text.length + (text.length >> 1)));
+        }
+    }
+
+    //address materialized from a row, only created when the batch is read as a list
+    private static final class BatchAddress extends Address {
+        private BatchAddress(AddressBatch batch, int row) {
+            dictionary = batch.dictionary(row);
+            countryCode = batch.countryCode(row);
+            house = batch.text(row, HOUSE);
+            postalCode = batch.text(row, POSTAL_CODE);
+            houseInStreet = batch.houseInStreet(row);
+            streetRef = batch.streetRefs[row];
+            cityRef = batch.cityRefs[row];
+            countyRef = batch.countyRefs[row];
+            stateRef = batch.stateRefs[row];
+            stateCodeRef = batch.stateCodeRefs[row];
+            countryRef = batch.countryRefs[row];
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Writes an <code>AddressBatch</code> as JSON on the reactive stack, the counterpart of
+ * <code>AddressHttpMessageConverter</code>. Jackson's encoder would serialize a batch into a single buffer, over 150 MB
+ * for the largest batches, so the batch is written in buffers of about <code>JsonOutput.FLUSH_THRESHOLD</code> bytes,
+ * each one being serialized when the connection asks for it.
+ * </p>
+ * <p>
+ * Any other media type, or a list of addresses which is not a batch, is left to the codecs of Jackson.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class AddressBatchMessageWriter implements HttpMessageWriter<AddressBatch> {
+
+    private final AddressMetrics metrics;
+
+    /**
+     * Creates a writer recording the serialization time of each response.
+     *
+     * @param metrics metrics of the REST calls
+     */
+    public AddressBatchMessageWriter(AddressMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<MediaType> getWritableMediaTypes() {
+        return List.of(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType elementType, MediaType mediaType) {
+        return AddressBatch.class.isAssignableFrom(elementType.toClass())
+                && (mediaType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mediaType));
+    }
+
+    @Override
+    public Mono<Void> write(Publisher<? extends AddressBatch> inputStream, ResolvableType elementType, MediaType mediaType,
+                            ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+        message.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBufferFactory bufferFactory = message.bufferFactory();
+        return message.writeWith(Flux.from(inputStream).concatMap(batch -> encode(batch, bufferFactory)));
+    }
+
+    //one buffer per request of the connection, the next row to write being the state of the generator
+    private Flux<DataBuffer> encode(AddressBatch batch, DataBufferFactory bufferFactory) {
+        long start = metrics.start();
+        JsonOutput output = new JsonOutput(JsonOutput.FLUSH_THRESHOLD * 2);
+        return Flux.<DataBuffer, Integer>generate(() -> 0, (row, sink) -> {
+            output.reset();
+            if (row == 0) {
+                output.writeByte('[');
+            }
+            while (row < batch.size() && output.size() < JsonOutput.FLUSH_THRESHOLD) {
+                if (row > 0) {
+                    output.writeByte(',');
+                }
+                AddressJsonWriter.write(batch, row++, output);
+            }
+            if (row == batch.size()) {
+                output.writeByte(']');
+                sink.next(bufferFactory.wrap(output.toByteArray()));
+                sink.complete();
+                metrics.recordSerialization(AddressMetrics.Endpoint.ADDRESSES, start);
+            } else {
+                sink.next(bufferFactory.wrap(output.toByteArray()));
+            }
+            return row;
+        });
+    }
+}
@@ -1,10 +1,12 @@
 package jathompson.randomizer.restaddress;
 
 import jathompson.randomizer.restaddress.util.AddressData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.FieldBuilder;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.StateTable;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Arrays;
 
 /**
  * <p>
@@ -30,84 +32,180 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 public class AddressCAN extends Address{
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(AddressCAN.class);
+    //dictionary references of the Quebec state names and codes, resolved once per loaded snapshot
+    private static volatile QuebecRefs quebecRefs;
 
     public AddressCAN(){
+        this(RandomSource.threadLocal());
+    }
+
+    /**
+     * Creates an address using the specified source of pseudo-random numbers.
+     *
+     * @param random source of pseudo-random numbers
+     */
+    public AddressCAN(RandomSource random){
+        this(random, AddressConstraints.NONE);
+    }
+
+    /**
+     * Creates an address using the specified source of pseudo-random numbers, with the requested field values.
+     *
+     * @param random source of pseudo-random numbers
+     * @param constraints requested state, city and postal code prefix
+     */
+    public AddressCAN(RandomSource random, AddressConstraints constraints){
         super();
-        createHouse();
+        CountryData data = AddressData.getCountryData(AddressData.CAN);
+        dictionary = data.getDictionary();
+        createHouse(random);
         //generate state first to determine if Quebec, if so generate remaining fields using FR instead of EN
-        createStateAndCode();
-        if ((stateCode !=null && stateCode.toUpperCase().equals("QC")) || ( state!=null && state.toUpperCase().equals("QUEBEC"))){
-            LOGGER.debug("Provence is QC, using French Data");
-            createStreetFR();
-            createCityFR();
-            createCountyFR();
+        createStateAndCode(data, random, constraints);
+        if (quebecRefs(data).contains(stateCodeRef) || quebecRefs(data).contains(stateRef)){
+            createStreetFR(data, random);
+            createCityFR(data, random, constraints);
+            createCountyFR(data, random);
         } else {
-            createStreetEN();
-            createCityEN();
-            createCountyEN();
+            createStreetEN(data, random);
+            createCityEN(data, random, constraints);
+            createCountyEN(data, random);
         }
-        createPostalCode();
-        createCountry();
+        createPostalCode(random);
+        postalCode = constraints.applyPostalPrefix(postalCode);
+        createCountry(data, random);
         countryCode = AddressData.CAN;
-        LOGGER.debug("Generated address is: {}, {}, {}, {}, {}, {}, {}, {}", house,street, postalCode, city, county, state, stateCode, county);
+        AddressDiagnostics.generated(this);
+    }
+
+    //compares references instead of decoding the state and code of every address from the dictionary
+    private static QuebecRefs quebecRefs(CountryData data){
+        QuebecRefs refs = quebecRefs;
+        if (refs == null || refs.data != data){
+            refs = new QuebecRefs(data);
+            quebecRefs = refs;
+        }
+        return refs;
     }
 
-    private void createStreetFR() {
-        street = AddressData.getRandomStreetFR();
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
+    private void createStreetFR(CountryData data, RandomSource random){
+        streetRef = data.getStreets(AddressData.FR).randomRef(random);
+        if (random.nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
             prependHouseToStreet();
         }
     }
 
-    private void createCityFR() {
-        city = AddressData.getRandomCityFR();
+    private void createCityFR(CountryData data, RandomSource random, AddressConstraints constraints){
+        cityRef = constrainCity(data, constraints, AddressData.FR, data.getCities(AddressData.FR).randomRef(random));
     }
 
-    private void createCountyFR(){
-        county = AddressData.getRandomCountyFR();
+    private void createCountyFR(CountryData data, RandomSource random){
+        countyRef = data.getCounties(AddressData.FR).randomRef(random);
     }
 
-    private void createStreetEN(){
-        street = AddressData.getRandomStreetEN();
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
+    private void createStreetEN(CountryData data, RandomSource random){
+        streetRef = data.getStreets(AddressData.EN).randomRef(random);
+        if (random.nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
             prependHouseToStreet();
         }
     }
 
-    private void createCityEN(){
-        city = AddressData.getRandomCityEN();
+    private void createCityEN(CountryData data, RandomSource random, AddressConstraints constraints){
+        cityRef = constrainCity(data, constraints, AddressData.EN, data.getCities(AddressData.EN).randomRef(random));
     }
 
-    private void createCountyEN(){
-        county = AddressData.getRandomCountyEN();
+    private void createCountyEN(CountryData data, RandomSource random){
+        countyRef = data.getCounties(AddressData.EN).randomRef(random);
     }
 
-    private void createPostalCode(){
-        StringBuilder tempCode = new StringBuilder();
+    private void createPostalCode(RandomSource random){
+        FieldBuilder tempCode = FieldBuilder.get();
         for (int i=0; i<6; i++){
+            if (i==3){
+                tempCode.append(' ');
+            }
             if (i%2==0){
-                tempCode.append(AddressData.getRandomLetter());
+                tempCode.append(AddressData.getRandomLetter(random));
             } else {
-                tempCode.append(ThreadLocalRandom.current().nextInt(10));
+                tempCode.append(random.nextInt(10));
             }
         }
-        postalCode = tempCode.insert(3, " ").toString();
+        postalCode = tempCode.toString();
     }
 
-    private void createStateAndCode(){
-        int i = ThreadLocalRandom.current().nextInt(AddressData.statesCAN.size());
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_PERCENT) {
-            state = AddressData.statesCAN.get(i);
+    private void createStateAndCode(CountryData data, RandomSource random, AddressConstraints constraints){
+        StateTable states = data.getStates();
+        int i = constrainStateRow(data, constraints, states.randomRow(random), random);
+        if (random.nextInt(100) < AddressConstants.STATE_PERCENT) {
+            stateRef = states.nameRef(i);
+        }
+        if (random.nextInt(100) < AddressConstants.STATE_CODE_PERCENT){
+            stateCodeRef = states.codeRef(i);
         }
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_CODE_PERCENT){
-            stateCode = AddressData.stateCodesCAN.get(i);
+        includeConstrainedState(states, i, constraints);
+    }
+
+    private void createCountry(CountryData data, RandomSource random){
+        if (random.nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
+            countryRef = data.getCountryNames().randomRef(random);
         }
     }
 
-    private void createCountry(){
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
-            country = AddressData.countryCAN.get(ThreadLocalRandom.current().nextInt(AddressData.countryCAN.size()));
+    private static final class QuebecRefs {
+        private final CountryData data;
+        private final int[] refs;
+
+        private QuebecRefs(CountryData data){
+            this.data = data;
+            StateTable states = data.getStates();
+            int[] refs = new int[0];
+            for (String key : new String[]{"QC", "QUEBEC"}){
+                int[] rows = data.findStateRows(key);
+                for (int i = 0; rows != null && i < rows.length; i++){
+                    refs = Arrays.copyOf(refs, refs.length + 2);
+                    refs[refs.length - 2] = states.nameRef(rows[i]);
+                    refs[refs.length - 1] = states.codeRef(rows[i]);
+                }
+            }
+            this.refs = refs;
+        }
+
+        private boolean contains(int ref){
+            for (int quebecRef : refs){
+                if (quebecRef == ref){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Registers <code>AddressCAN</code> with the <code>CountryRegistry</code>.
+     */
+    public static class Generator implements CountryAddressGenerator {
+        @Override
+        public String getCountryCode(){
+            return AddressData.CAN;
+        }
+
+        @Override
+        public Address createAddress(RandomSource random){
+            return new AddressCAN(random);
+        }
+
+        @Override
+        public boolean supportsConstraints(){
+            return true;
+        }
+
+        @Override
+        public Address createAddress(RandomSource random, AddressConstraints constraints){
+            return new AddressCAN(random, constraints);
+        }
+
+        @Override
+        public String getPostalCodeFormat(){
+            return "A9A 9A9";
         }
     }
 }
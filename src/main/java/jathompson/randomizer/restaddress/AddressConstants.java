@@ -21,4 +21,9 @@ public interface AddressConstants {
     int STATE_CODE_PERCENT = 50;
 
     int COUNTRY_PERCENT = 50;
+
+    //Upper bound on the number of addresses returned by a single bulk request
+    int MAX_BULK_COUNT = 1000000;
+    //Upper bound on the number of addresses written by a single streaming request
+    int MAX_STREAM_COUNT = 100000000;
 }
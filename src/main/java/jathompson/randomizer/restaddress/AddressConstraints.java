@@ -0,0 +1,123 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.CountryData;
+
+/**
+ * <p>
+ * Field values requested for the generated addresses: a state, by name or code, a city and a postal code prefix.
+ * </p>
+ * <p>
+ * Constrained fields are chosen directly from the indexes of the country's <code>CountryData</code>, every other field
+ * is generated as usual, so the same seed and constraints always produce the same address. An address constrained to
+ * a state always includes its state name or code.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressConstraints {
+
+    /**
+     * No constraint, every field is generated.
+     */
+    public static final AddressConstraints NONE = new AddressConstraints(null, null, null);
+
+    private final String state;
+    private final String city;
+    private final String postalPrefix;
+
+    private AddressConstraints(String state, String city, String postalPrefix) {
+        this.state = state;
+        this.city = city;
+        this.postalPrefix = postalPrefix;
+    }
+
+    /**
+     * Creates the constraints of a request. Missing or blank values do not constrain their field.
+     *
+     * @param state state name or code, in any case
+     * @param city city name, in any case
+     * @param postalPrefix leading characters of the postal code, in any case
+     * @return constraints, <code>NONE</code> if no value is specified
+     */
+    public static AddressConstraints of(String state, String city, String postalPrefix) {
+        String stateKey = isBlank(state) ? null : CountryData.key(state);
+        String cityKey = isBlank(city) ? null : CountryData.key(city);
+        String prefix = isBlank(postalPrefix) ? null : CountryData.key(postalPrefix);
+        if (stateKey == null && cityKey == null && prefix == null) {
+            return NONE;
+        }
+        return new AddressConstraints(stateKey, cityKey, prefix);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    /**
+     * Requested state.
+     *
+     * @return key of the state name or code, or null
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * Requested city.
+     *
+     * @return key of the city name, or null
+     */
+    public String getCity() {
+        return city;
+    }
+
+    public String getPostalPrefix() {
+        return postalPrefix;
+    }
+
+    /**
+     * Checks whether the postal code prefix fits a postal code format.
+     *
+     * @param format postal code format, <code>9</code> for a digit, <code>A</code> for a letter, other characters
+     *               for themselves
+     * @return true if there is no prefix or it fits the format
+     */
+    public boolean fitsPostalFormat(String format) {
+        if (postalPrefix == null) {
+            return true;
+        }
+        if (format == null || postalPrefix.length() > format.length()) {
+            return false;
+        }
+        for (int i = 0; i < postalPrefix.length(); i++) {
+            char c = postalPrefix.charAt(i);
+            char f = format.charAt(i);
+            boolean fits = f == '9' ? c >= '0' && c <= '9'
+                    : f == 'A' ? (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+                    : c == f;
+            if (!fits) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the leading characters of a generated postal code with the requested prefix, so the remaining
+     * characters stay uniformly distributed.
+     *
+     * @param postalCode generated postal code
+     * @return postal code starting with the prefix
+     */
+    String applyPostalPrefix(String postalCode) {
+        if (postalPrefix == null) {
+            return postalCode;
+        }
+        return postalPrefix + postalCode.substring(postalPrefix.length());
+    }
+}
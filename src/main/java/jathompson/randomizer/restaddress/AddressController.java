@@ -1,13 +1,23 @@
 package jathompson.randomizer.restaddress;
 
 import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.List;
 
 /**
  * Class used by SpringBoot for REST calls.
@@ -20,22 +30,170 @@ public class AddressController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AddressController.class);
 
+    /**
+     * Newline delimited JSON, one address per line.
+     */
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    /**
+     * Protocol Buffers messages of <code>/address.proto</code>.
+     */
+    public static final MediaType APPLICATION_PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+    /**
+     * Jackson's binary JSON format.
+     */
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    //binary formats in order of preference, a request which does not accept one of them explicitly receives JSON
+    private static final List<MediaType> BINARY_TYPES = List.of(APPLICATION_PROTOBUF, MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
+    private final AddressMetrics metrics;
+    private final AddressRequestValidator validator;
+    private final UniqueFilterFactory uniqueFilters;
+    //null unless randomizer.pool.enabled=true
+    private final AddressPool pool;
+
+    public AddressController(AddressMetrics metrics, AddressRequestValidator validator,
+                             UniqueFilterFactory uniqueFilters, ObjectProvider<AddressPool> pool) {
+        this.metrics = metrics;
+        this.validator = validator;
+        this.uniqueFilters = uniqueFilters;
+        this.pool = pool.getIfAvailable();
+        //discover the country generators at startup rather than on the first request
+        LOGGER.debug("Implemented countries are: {}", CountryRegistry.getCountryCodes());
+    }
+
     /**
      * Creates an <code>Address</code> for a randomly selected implemented country unless country is specified as a
-     * parameter.
+     * parameter. If a seed is specified, the same address is returned for every request with that seed. Without a
+     * seed or constraints, the address is taken from the <code>AddressPool</code> when it is enabled and holds one,
+     * unless the client accepts a binary format or the request is traced, as a pooled address was generated and
+     * logged by a producer thread before the request.
      *
      * @param country Type of address to generate
-     * @return pseudo-randomly generated Address
-     * @throws org.springframework.web.server.ResponseStatusException if the country is invalid
+     * @param seed Optional seed used to reproduce the address
+     * @param state Optional state name or code of the address, requires a country
+     * @param city Optional city of the address, requires a country
+     * @param postalPrefix Optional leading characters of the postal code, requires a country
+     * @param accept Accept header of the request
+     * @return pseudo-randomly generated Address, or its JSON when pooled
+     * @throws org.springframework.web.server.ResponseStatusException if the country or a constraint is invalid
      */
     @GetMapping("/randomizer/address")
-    public Address createRandomAddress(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country) {
-        LOGGER.debug("Country is {}", country);
-        LOGGER.debug("Implemented countries are: {}", AddressData.implementedCountries);
-        if ( !(country.toUpperCase().equals(AddressData.DEFAULT) || AddressData.implementedCountries.contains(country.toUpperCase()))){
-              LOGGER.error("Country {} is not supported by this REST call", country);
-              throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Country is not supported");
+    public ResponseEntity<Object> createRandomAddress(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country,
+                                                      @RequestParam(value = "seed", required = false) Long seed,
+                                                      @RequestParam(value = "state", required = false) String state,
+                                                      @RequestParam(value = "city", required = false) String city,
+                                                      @RequestParam(value = "postalPrefix", required = false) String postalPrefix,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) String accept) {
+        long start = metrics.start();
+        validator.validateCountry(country);
+        AddressConstraints constraints = validator.validateConstraints(country, state, city, postalPrefix);
+        if (seed == null && pool != null && constraints.isEmpty() && acceptedBinaryType(accept) == null
+                && AddressDiagnostics.getTraceId() == null){
+            byte[] json = pool.poll(country);
+            if (json != null){
+                metrics.recordRequest(AddressMetrics.Endpoint.ADDRESS, country, 1, start);
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(json);
+            }
+        }
+        RandomSource random = seed != null ? RandomSource.forIndex(seed, 0) : RandomSource.threadLocal();
+        Address address = AddressFactory.createAddress(country, random, constraints);
+        metrics.recordRequest(AddressMetrics.Endpoint.ADDRESS, country, 1, start);
+        return ResponseEntity.ok(address);
+    }
+
+    /**
+     * Returns the address at the specified index of the run identified by seed. The address is a pure function of
+     * seed, index and country, so any position of a run can be retrieved in constant time without generating the
+     * addresses before it. <code>/randomizer/address/{seed}/{index}</code> returns the same address as the bulk
+     * and streaming endpoints with the same seed at that index.
+     *
+     * @param seed Seed identifying the run
+     * @param index Index of the address within the run
+     * @param country Type of address to generate
+     * @return pseudo-randomly generated Address
+     * @throws org.springframework.web.server.ResponseStatusException if the country or index is invalid
+     */
+    @GetMapping("/randomizer/address/{seed}/{index}")
+    public Address getIndexedAddress(@PathVariable("seed") long seed,
+                                     @PathVariable("index") long index,
+                                     @RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country) {
+        long start = metrics.start();
+        //serialization of the servlet response is recorded under this endpoint
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(AddressMetrics.ENDPOINT_ATTRIBUTE, AddressMetrics.Endpoint.INDEXED, RequestAttributes.SCOPE_REQUEST);
+        }
+        validator.validateCountry(country);
+        validator.validateOffset(index, 1);
+        Address address = AddressFactory.createAddress(country, RandomSource.forIndex(seed, index));
+        metrics.recordRequest(AddressMetrics.Endpoint.INDEXED, country, 1, start);
+        return address;
+    }
+
+    /**
+     * Creates a batch of <code>Address</code> objects in one request. If country is not specified, each address
+     * will be created for a randomly selected implemented country.
+     * If a seed is specified, the batch holds the addresses at indexes <code>offset</code> to
+     * <code>offset + count - 1</code> of the run identified by the seed.
+     * If unique is true, no two addresses of the batch share their country, street, house number and postal code.
+     * State, city and postal prefix constrain those fields of every address of the batch to the requested values.
+     *
+     * @param country Type of address to generate
+     * @param count Number of addresses to generate, limited to <code>AddressConstants.MAX_BULK_COUNT</code>
+     * @param seed Optional seed used to reproduce the batch
+     * @param offset Index of the first address when a seed is specified
+     * @param unique Whether the addresses of the batch must be unique
+     * @param state Optional state name or code of every address, requires a country
+     * @param city Optional city of every address, requires a country
+     * @param postalPrefix Optional leading characters of every postal code, requires a country
+     * @return list of pseudo-randomly generated Addresses
+     * @throws org.springframework.web.server.ResponseStatusException if the country, count, offset or a constraint is invalid
+     */
+    @GetMapping("/randomizer/addresses")
+    public ResponseEntity<List<Address>> createRandomAddresses(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country,
+                                                               @RequestParam(value = "count", defaultValue = "10") int count,
+                                                               @RequestParam(value = "seed", required = false) Long seed,
+                                                               @RequestParam(value = "offset", defaultValue = "0") long offset,
+                                                               @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+                                                               @RequestParam(value = "state", required = false) String state,
+                                                               @RequestParam(value = "city", required = false) String city,
+                                                               @RequestParam(value = "postalPrefix", required = false) String postalPrefix) {
+        long start = metrics.start();
+        validator.validateCountry(country);
+        validator.validateCount(count, AddressConstants.MAX_BULK_COUNT);
+        validator.validateOffset(offset, count);
+        AddressConstraints constraints = validator.validateConstraints(country, state, city, postalPrefix);
+        UniqueFilter filter = uniqueFilters.create(unique, count);
+        AddressBatch addresses;
+        try {
+            addresses = seed != null ? AddressFactory.createAddresses(country, seed, offset, count, constraints, filter)
+                    : AddressFactory.createAddresses(country, count, constraints, filter);
+        } finally {
+            uniqueFilters.release(filter);
+        }
+        metrics.recordRequest(AddressMetrics.Endpoint.ADDRESSES, country, count, start);
+        if (filter != null){
+            return ResponseEntity.ok().header(UniqueFilterFactory.FALSE_POSITIVE_RATE_HEADER,
+                    Double.toString(filter.getFalsePositiveRate())).body(addresses);
+        }
+        return ResponseEntity.ok(addresses);
+    }
+
+    /**
+     * Binary format accepted explicitly by a request, its type being listed in the Accept header.
+     *
+     * @param accept Accept header of the request
+     * @return <code>APPLICATION_PROTOBUF</code>, <code>APPLICATION_CBOR</code> or <code>APPLICATION_SMILE</code> in
+     * that order of preference, or null for JSON
+     */
+    static MediaType acceptedBinaryType(String accept) {
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        for (MediaType binaryType : BINARY_TYPES) {
+            if (accepted.stream().anyMatch(binaryType::equalsTypeAndSubtype)) {
+                return binaryType;
+            }
         }
-        return AddressFactory.createAddress(country);
+        return null;
     }
 }
@@ -0,0 +1,111 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Writes an <code>Address</code> as a UTF-8 CSV record into a <code>JsonOutput</code>, in the same way
+ * <code>AddressJsonWriter</code> writes JSON.
+ * </p>
+ * <p>
+ * Every address has the columns of <code>HEADER</code>, in the order of the JSON fields. Values are quoted, null
+ * fields are empty. Values loaded by <code>AddressData</code> are copied from the country's <code>Dictionary</code>
+ * by reference, and the house numbers and postal codes of an <code>AddressBatch</code> from its packed bytes.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressCsvWriter {
+    /**
+     * Header record, terminated by a line feed.
+     */
+    public static final byte[] HEADER = "house,street,postalCode,city,county,state,stateCode,country,countryCode\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private AddressCsvWriter() {}
+
+    /**
+     * Writes an address as a CSV record, without the line feed.
+     *
+     * @param address address to write
+     * @param output buffer receiving the record
+     */
+    public static void write(Address address, JsonOutput output) {
+        Dictionary dictionary = address.dictionary;
+        writeField(output, address.house);
+        output.writeByte(',');
+        if (address.houseInStreet == Address.HOUSE_NOT_IN_STREET){
+            writeField(output, dictionary, address.streetRef);
+        } else {
+            writeField(output, address.getStreet());
+        }
+        output.writeByte(',');
+        writeField(output, address.postalCode);
+        output.writeByte(',');
+        writeField(output, dictionary, address.cityRef);
+        output.writeByte(',');
+        writeField(output, dictionary, address.countyRef);
+        output.writeByte(',');
+        writeField(output, dictionary, address.stateRef);
+        output.writeByte(',');
+        writeField(output, dictionary, address.stateCodeRef);
+        output.writeByte(',');
+        writeField(output, dictionary, address.countryRef);
+        output.writeByte(',');
+        writeField(output, address.countryCode);
+    }
+
+    /**
+     * Writes a row of a batch as a CSV record, without the line feed. The output is the same as for the address.
+     *
+     * @param batch batch holding the address
+     * @param row index of the address in the batch
+     * @param output buffer receiving the record
+     */
+    public static void write(AddressBatch batch, int row, JsonOutput output) {
+        Dictionary dictionary = batch.dictionary(row);
+        writeField(output, batch, row, AddressBatch.HOUSE);
+        output.writeByte(',');
+        if (batch.houseInStreet(row) == Address.HOUSE_NOT_IN_STREET){
+            writeField(output, dictionary, batch.streetRef(row));
+        } else {
+            writeField(output, batch.street(row));
+        }
+        output.writeByte(',');
+        writeField(output, batch, row, AddressBatch.POSTAL_CODE);
+        output.writeByte(',');
+        writeField(output, dictionary, batch.cityRef(row));
+        output.writeByte(',');
+        writeField(output, dictionary, batch.countyRef(row));
+        output.writeByte(',');
+        writeField(output, dictionary, batch.stateRef(row));
+        output.writeByte(',');
+        writeField(output, dictionary, batch.stateCodeRef(row));
+        output.writeByte(',');
+        writeField(output, dictionary, batch.countryRef(row));
+        output.writeByte(',');
+        writeField(output, batch.countryCode(row));
+    }
+
+    private static void writeField(JsonOutput output, AddressBatch batch, int row, int field) {
+        if (!batch.isNull(row, field)) {
+            batch.writeCsv(row, field, output);
+        }
+    }
+
+    private static void writeField(JsonOutput output, String value) {
+        if (value != null) {
+            output.writeCsvString(value);
+        }
+    }
+
+    private static void writeField(JsonOutput output, Dictionary dictionary, int ref) {
+        if (ref != Dictionary.NO_VALUE) {
+            dictionary.writeCsv(ref, output);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package jathompson.randomizer.restaddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ * Diagnostic logging of generated addresses, kept off the generation hot path.
+ * </p>
+ * <p>
+ * With debug logging enabled, roughly 1 in <code>randomizer.diagnostics.sample-rate</code> generated addresses is
+ * logged instead of every address. When <code>randomizer.diagnostics.trace-header.enabled=true</code>, a request
+ * carrying the <code>X-Randomizer-Trace</code> header logs every address it generates at INFO, whatever the log level.
+ * The header's value is the trace id of those log lines and is echoed in the response, an empty value is replaced by
+ * a generated id.
+ * </p>
+ * <p>
+ * Unless one of them applies, <code>generated</code> only reads the log level and a flag, so no message arguments
+ * are allocated per address.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressDiagnostics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AddressDiagnostics.class);
+
+    /**
+     * Request header turning on address logging for that request only.
+     */
+    public static final String TRACE_HEADER = "X-Randomizer-Trace";
+
+    //trace id of the request handled by the thread
+    private static final ThreadLocal<String> TRACE_ID = new ThreadLocal<>();
+    private static volatile int sampleRate = 1000;
+    private static volatile boolean traceHeaderEnabled;
+
+    private AddressDiagnostics() {
+    }
+
+    /**
+     * Configures the diagnostics.
+     *
+     * @param sampleRate 1 in how many addresses is logged at debug level, 0 logs none
+     * @param traceHeaderEnabled whether <code>X-Randomizer-Trace</code> turns on logging for a request
+     * @throws IllegalArgumentException if the sample rate is negative
+     */
+    public static void configure(int sampleRate, boolean traceHeaderEnabled) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate " + sampleRate + " is negative");
+        }
+        AddressDiagnostics.sampleRate = sampleRate;
+        AddressDiagnostics.traceHeaderEnabled = traceHeaderEnabled;
+    }
+
+    public static boolean isTraceHeaderEnabled() {
+        return traceHeaderEnabled;
+    }
+
+    /**
+     * Trace id of the addresses generated by the current thread.
+     *
+     * @return trace id of the current request, or null if it is not traced
+     */
+    public static String getTraceId() {
+        return traceHeaderEnabled ? TRACE_ID.get() : null;
+    }
+
+    /**
+     * Traces the addresses generated by the current thread until cleared. Work handed to another thread, such as a
+     * streaming response, must set it again on that thread.
+     *
+     * @param traceId id logged with the addresses, null to clear
+     */
+    public static void setTraceId(String traceId) {
+        if (traceId != null) {
+            TRACE_ID.set(traceId);
+        } else {
+            TRACE_ID.remove();
+        }
+    }
+
+    /**
+     * Wraps a task handed to another thread, so it traces its addresses if the current request is traced. The trace
+     * id the running thread had before is restored once the task ends.
+     *
+     * @param task task generating addresses for the current request
+     * @return the task, wrapped if the current request is traced
+     */
+    public static Runnable propagate(Runnable task) {
+        String traceId = getTraceId();
+        if (traceId == null) {
+            return task;
+        }
+        return () -> {
+            String previous = TRACE_ID.get();
+            setTraceId(traceId);
+            try {
+                task.run();
+            } finally {
+                setTraceId(previous);
+            }
+        };
+    }
+
+    /**
+     * Trace id of a request.
+     *
+     * @param header value of the <code>X-Randomizer-Trace</code> header, may be null
+     * @return the header's value, a generated id if it is empty, or null if the request is not traced
+     */
+    public static String traceId(String header) {
+        if (header == null) {
+            return null;
+        }
+        return header.isBlank() ? UUID.randomUUID().toString() : header.trim();
+    }
+
+    /**
+     * Logs a generated address if the current request is traced or the address is sampled.
+     *
+     * @param address generated address
+     */
+    static void generated(Address address) {
+        if (traceHeaderEnabled) {
+            String traceId = TRACE_ID.get();
+            if (traceId != null) {
+                LOGGER.info("Traced address of {} is: {}", traceId, describe(address));
+                return;
+            }
+        }
+        int rate = sampleRate;
+        if (rate > 0 && LOGGER.isDebugEnabled() && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0)) {
+            LOGGER.debug("Sampled address is: {}", describe(address));
+        }
+    }
+
+    private static String describe(Address address) {
+        return String.join(", ", address.getHouse(), address.getStreet(), address.getPostalCode(),
+                String.valueOf(address.getCity()), String.valueOf(address.getCounty()), String.valueOf(address.getState()),
+                String.valueOf(address.getStateCode()), String.valueOf(address.getCountry()), address.getCountryCode());
+    }
+}
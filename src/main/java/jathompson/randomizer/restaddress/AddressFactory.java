@@ -1,15 +1,27 @@
 package jathompson.randomizer.restaddress;
 
 import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
+ * <p>
  * Factory class used to instantiate an <code>Address</code>.
+ * </p>
+ * <p>
+ * Batches of at least <code>parallelThreshold</code> addresses without a unique filter are split into slices which
+ * are generated in parallel by the common <code>ForkJoinPool</code>, each slice into its own <code>AddressBatch</code>
+ * from its own random stream, and joined in order. A seeded batch is the same whether it is generated in parallel or
+ * not, since each address is drawn from the source of its index.
+ * </p>
  *
  * @author Jennifer A Thompson
  * @version 1.0
@@ -18,8 +30,36 @@ public class AddressFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AddressFactory.class);
 
+    /**
+     * Addresses generated for one position of a unique batch before giving up.
+     */
+    public static final int MAX_UNIQUE_ATTEMPTS = 100;
+
+    /**
+     * Default of the smallest batch generated in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+    //smallest slice of a parallel batch, and slices per thread of the pool to balance uneven slices
+    private static final int MIN_SLICE = 1024;
+    private static final int SLICES_PER_THREAD = 4;
+
+    private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
     public AddressFactory() {}
 
+    /**
+     * Sets the smallest batch generated in parallel, smaller batches are generated by the requesting thread.
+     *
+     * @param threshold number of addresses, 0 or less to never generate in parallel
+     */
+    public static void setParallelThreshold(int threshold){
+        parallelThreshold = threshold;
+    }
+
+    public static int getParallelThreshold(){
+        return parallelThreshold;
+    }
+
     /**
      * Generates a pseudo-random address. The country will be pseudo-randomly selected
      * from a list of countries implemented for this application.
@@ -27,7 +67,18 @@ public class AddressFactory {
      * @return Address from pseudo-randomly selected country.
      */
     public static Address createAddress(){
-        return AddressFactory.createAddress(AddressData.implementedCountries.get(ThreadLocalRandom.current().nextInt(AddressData.implementedCountries.size())));
+        return AddressFactory.createAddress(RandomSource.threadLocal());
+    }
+
+    /**
+     * Generates a pseudo-random address using the specified source of pseudo-random numbers. The country will be
+     * pseudo-randomly selected from a list of countries enabled in this application.
+     *
+     * @param random source of pseudo-random numbers
+     * @return Address from pseudo-randomly selected country.
+     */
+    public static Address createAddress(RandomSource random){
+        return CountryRegistry.random(random).createAddress(random);
     }
 
     /**
@@ -37,29 +88,227 @@ public class AddressFactory {
      * @return pseudo-randomly generated address
      */
     public static Address createAddress(String country){
-        LOGGER.debug("Country is {}", country);
-        Address address;
-        switch(country.toUpperCase()){
-            case AddressData.DEFAULT:
-                address = createAddress();
-                break;
-            case AddressData.CAN:
-                address =  new AddressCAN();
-                break;
-            case AddressData.MEX:
-                address =  new AddressMEX();
-                break;
-            case AddressData.NETHERLANDS:
-                address = new AddressNLD();
-                break;
-            case AddressData.USA:
-                address =  new AddressUSA();
-                break;
-            default: //since validation done in AddressController this case is next expected
-                LOGGER.error("Country {} is not implemented by this REST call", country);
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Country is not yet implemented");
+        return AddressFactory.createAddress(country, RandomSource.threadLocal());
+    }
+
+    /**
+     * Generates an address for the specified country using the specified source of pseudo-random numbers.
+     * The country is resolved through the <code>CountryRegistry</code>, ignoring case.
+     *
+     * @param country type of address to create
+     * @param random source of pseudo-random numbers
+     * @return pseudo-randomly generated address
+     */
+    public static Address createAddress(String country, RandomSource random){
+        return createAddress(country, random, AddressConstraints.NONE);
+    }
+
+    /**
+     * Generates an address for the specified country with the requested field values. Constraints require a
+     * country, they are validated by <code>AddressRequestValidator</code>.
+     *
+     * @param country type of address to create
+     * @param random source of pseudo-random numbers
+     * @param constraints requested field values
+     * @return pseudo-randomly generated address
+     */
+    public static Address createAddress(String country, RandomSource random, AddressConstraints constraints){
+        if (AddressData.DEFAULT.equalsIgnoreCase(country)){
+            return createAddress(random);
+        }
+        CountryAddressGenerator generator = CountryRegistry.lookup(country);
+        if (generator == null){ //since validation done in AddressController this case is next expected
+            LOGGER.error("Country {} is not implemented by this REST call", country);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Country is not yet implemented");
+        }
+        return generator.createAddress(random, constraints);
+    }
+
+    /**
+     * Generates an address whose key was not yet added to the filter, and adds it.
+     *
+     * @param country type of address to create
+     * @param random source of pseudo-random numbers, drawn from again while the address is a duplicate
+     * @param constraints requested field values
+     * @param filter filter of the keys already generated, or null to allow duplicates
+     * @return pseudo-randomly generated address
+     * @throws UniqueAddressesExhaustedException if no unique address was found in <code>MAX_UNIQUE_ATTEMPTS</code> attempts
+     */
+    public static Address createAddress(String country, RandomSource random, AddressConstraints constraints, UniqueFilter filter){
+        if (filter == null){
+            return createAddress(country, random, constraints);
+        }
+        for (int attempt = 0; attempt < MAX_UNIQUE_ATTEMPTS; attempt++){
+            Address address = createAddress(country, random, constraints);
+            if (filter.add(address.uniqueKey())){
+                return address;
+            }
+        }
+        LOGGER.error("No unique {} address found in {} attempts", country, MAX_UNIQUE_ATTEMPTS);
+        throw new UniqueAddressesExhaustedException();
+    }
+
+    /**
+     * Generates a batch of addresses for the specified country. If no country is specified, the country
+     * of each address will be pseudo-randomly selected so the batch contains a mix of implemented countries.
+     *
+     * @param country type of address to create
+     * @param count number of addresses to create
+     * @return columnar batch of pseudo-randomly generated addresses
+     */
+    public static AddressBatch createAddresses(String country, int count){
+        return createAddresses(country, count, AddressConstraints.NONE, null);
+    }
+
+    /**
+     * Generates a batch of addresses with the requested field values, unique within the batch when a filter is
+     * specified.
+     *
+     * @param country type of address to create
+     * @param count number of addresses to create
+     * @param constraints requested field values
+     * @param filter filter of the keys already in the batch, or null to allow duplicates
+     * @return columnar batch of pseudo-randomly generated addresses
+     */
+    public static AddressBatch createAddresses(String country, int count, AddressConstraints constraints, UniqueFilter filter){
+        LOGGER.debug("Country is {}, count is {}", country, count);
+        if (isParallel(count, filter)){
+            return createInParallel(country, null, 0, count, constraints);
+        }
+        AddressBatch addresses = new AddressBatch(count);
+        for (int i=0; i<count; i++){
+            addresses.add(createAddress(country, RandomSource.threadLocal(), constraints, filter));
+        }
+        return addresses;
+    }
+
+    /**
+     * Generates a reproducible batch of addresses for the specified country. The address at position <code>i</code>
+     * of the batch is the address at index <code>offset + i</code> of the run identified by seed, so the same
+     * seed and index always produce the same address and a run can be split into batches with different offsets.
+     *
+     * @param country type of address to create
+     * @param seed seed identifying the run
+     * @param offset index of the first address in the batch
+     * @param count number of addresses to create
+     * @return columnar batch of pseudo-randomly generated addresses
+     */
+    public static AddressBatch createAddresses(String country, long seed, long offset, int count){
+        return createAddresses(country, seed, offset, count, AddressConstraints.NONE, null);
+    }
+
+    /**
+     * Generates a reproducible batch of addresses, unique within the batch when a filter is specified. A position
+     * whose address is already in the batch takes the next address of its own seeded source, so the batch is the
+     * same for the same seed, offset and count, but no longer a slice of a larger unique batch.
+     *
+     * @param country type of address to create
+     * @param seed seed identifying the run
+     * @param offset index of the first address in the batch
+     * @param count number of addresses to create
+     * @param constraints requested field values
+     * @param filter filter of the keys already in the batch, or null to allow duplicates
+     * @return columnar batch of pseudo-randomly generated addresses
+     */
+    public static AddressBatch createAddresses(String country, long seed, long offset, int count, AddressConstraints constraints, UniqueFilter filter){
+        if (LOGGER.isDebugEnabled()){
+            LOGGER.debug("Country is {}, seed is {}, offset is {}, count is {}", country, seed, offset, count);
+        }
+        if (isParallel(count, filter)){
+            return createInParallel(country, seed, offset, count, constraints);
+        }
+        AddressBatch addresses = new AddressBatch(count);
+        for (int i=0; i<count; i++){
+            addresses.add(createAddress(country, RandomSource.forIndex(seed, offset + i), constraints, filter));
+        }
+        return addresses;
+    }
+
+    /**
+     * Appends the addresses at indexes <code>offset</code> to <code>offset + count - 1</code> of the run identified by
+     * seed to a batch, so that a batch can be cleared and filled again for each block of a large run.
+     *
+     * @param batch batch receiving the addresses
+     * @param country type of address to create
+     * @param seed seed identifying the run
+     * @param offset index of the first address to append
+     * @param count number of addresses to append
+     */
+    public static void appendAddresses(AddressBatch batch, String country, long seed, long offset, int count){
+        for (int i=0; i<count; i++){
+            batch.add(createAddress(country, RandomSource.forIndex(seed, offset + i)));
+        }
+    }
+
+    //a unique filter is shared by the whole batch and decides which position retries, so unique batches stay sequential
+    private static boolean isParallel(int count, UniqueFilter filter){
+        int threshold = parallelThreshold;
+        return filter == null && threshold > 0 && count >= threshold;
+    }
+
+    private static AddressBatch createInParallel(String country, Long seed, long offset, int count, AddressConstraints constraints){
+        int slices = Math.min(ForkJoinPool.getCommonPoolParallelism() * SLICES_PER_THREAD, (count + MIN_SLICE - 1) / MIN_SLICE);
+        AddressBatch[] batches = new AddressBatch[slices];
+        //the slices of a traced request are logged under its trace id, whichever thread generates them
+        ForkJoinPool.commonPool().invoke(new SliceTask(country, seed, offset, count, constraints, AddressDiagnostics.getTraceId(),
+                batches, 0, slices));
+        AddressBatch addresses = new AddressBatch(count);
+        for (AddressBatch batch : batches){
+            addresses.append(batch);
+        }
+        return addresses;
+    }
+
+    //generates the slices from first (inclusive) to last (exclusive) of a batch, splitting the range in halves
+    private static final class SliceTask extends RecursiveAction {
+        private final String country;
+        private final Long seed;
+        private final long offset;
+        private final int count;
+        private final AddressConstraints constraints;
+        private final String traceId;
+        private final AddressBatch[] batches;
+        private final int first;
+        private final int last;
+
+        private SliceTask(String country, Long seed, long offset, int count, AddressConstraints constraints, String traceId,
+                          AddressBatch[] batches, int first, int last){
+            this.country = country;
+            this.seed = seed;
+            this.offset = offset;
+            this.count = count;
+            this.constraints = constraints;
+            this.traceId = traceId;
+            this.batches = batches;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute(){
+            if (last - first > 1){
+                int middle = (first + last) >>> 1;
+                ForkJoinTask.invokeAll(new SliceTask(country, seed, offset, count, constraints, traceId, batches, first, middle),
+                        new SliceTask(country, seed, offset, count, constraints, traceId, batches, middle, last));
+                return;
+            }
+            int start = (int) ((long) count * first / batches.length);
+            int end = (int) ((long) count * last / batches.length);
+            AddressBatch batch = new AddressBatch(end - start);
+            //the requesting thread may run a slice itself, its own trace id is restored afterwards
+            String previous = AddressDiagnostics.getTraceId();
+            AddressDiagnostics.setTraceId(traceId);
+            try {
+                for (int i = start; i < end; i++){
+                    //unseeded slices draw from the random stream of the worker thread generating them
+                    RandomSource random = seed == null ? RandomSource.threadLocal() : RandomSource.forIndex(seed, offset + i);
+                    batch.add(createAddress(country, random, constraints));
+                }
+            } finally {
+                AddressDiagnostics.setTraceId(previous);
+            }
+            batches[first] = batch;
         }
-        return address;
     }
 
 }
@@ -0,0 +1,194 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Writes an <code>Address</code> or a collection of addresses as JSON with <code>AddressJsonWriter</code>, bypassing
+ * Jackson's reflection based serialization. Any other type is left to the remaining converters.
+ * </p>
+ * <p>
+ * Each thread reuses one buffer which is written to the response every <code>JsonOutput.FLUSH_THRESHOLD</code> bytes,
+ * so the buffer stays small regardless of batch size. An <code>AddressBatch</code> is written row by row from its
+ * columns, without materializing its addresses.
+ * </p>
+ * <p>
+ * Subclasses write another format by overriding the methods writing an address and the elements of a collection,
+ * see <code>AddressProtobufHttpMessageConverter</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class AddressHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    private static final ThreadLocal<JsonOutput> OUTPUTS =
+            ThreadLocal.withInitial(() -> new JsonOutput(JsonOutput.FLUSH_THRESHOLD * 2));
+
+    private final AddressMetrics metrics;
+
+    public AddressHttpMessageConverter() {
+        this(AddressMetrics.DISABLED);
+    }
+
+    /**
+     * Creates a converter recording the serialization time of each response.
+     *
+     * @param metrics metrics of the REST calls
+     */
+    public AddressHttpMessageConverter(AddressMetrics metrics) {
+        this(MediaType.APPLICATION_JSON, metrics);
+    }
+
+    /**
+     * Creates a converter of the specified media type recording the serialization time of each response.
+     *
+     * @param mediaType media type written by the converter
+     * @param metrics metrics of the REST calls
+     */
+    protected AddressHttpMessageConverter(MediaType mediaType, AddressMetrics metrics) {
+        super(mediaType);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Address.class.isAssignableFrom(clazz);
+    }
+
+    //lists the media type for collections too, whose element type is only checked by canWrite with the generic type
+    @Override
+    public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+        return Address.class.isAssignableFrom(clazz) || Collection.class.isAssignableFrom(clazz)
+                ? getSupportedMediaTypes() : Collections.emptyList();
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!canWrite(mediaType)) {
+            return false;
+        }
+        if (Address.class.isAssignableFrom(clazz)) {
+            return true;
+        }
+        if (type != null && Collection.class.isAssignableFrom(clazz)) {
+            Class<?> elementClass = ResolvableType.forType(type).asCollection().resolveGeneric(0);
+            return elementClass != null && Address.class.isAssignableFrom(elementClass);
+        }
+        return false;
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        long start = metrics.start();
+        OutputStream body = outputMessage.getBody();
+        JsonOutput output = OUTPUTS.get();
+        output.reset();
+        if (value instanceof Address) {
+            writeAddress((Address) value, output);
+            output.writeTo(body);
+            metrics.recordSerialization(singleAddressEndpoint(), start);
+        } else if (value instanceof AddressBatch) {
+            AddressBatch batch = (AddressBatch) value;
+            writeStart(output);
+            for (int row = 0; row < batch.size(); row++) {
+                writeElement(batch, row, output);
+                output.flushIfFull(body);
+            }
+            writeEnd(output);
+            output.writeTo(body);
+            metrics.recordSerialization(AddressMetrics.Endpoint.ADDRESSES, start);
+        } else {
+            writeStart(output);
+            int index = 0;
+            for (Object address : (Collection<?>) value) {
+                writeElement((Address) address, index++, output);
+                output.flushIfFull(body);
+            }
+            writeEnd(output);
+            output.writeTo(body);
+            metrics.recordSerialization(AddressMetrics.Endpoint.ADDRESSES, start);
+        }
+    }
+
+    //the endpoint set by the controller, so indexed addresses are not recorded with the random ones
+    private static AddressMetrics.Endpoint singleAddressEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object endpoint = attributes == null ? null : attributes.getAttribute(AddressMetrics.ENDPOINT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        return endpoint instanceof AddressMetrics.Endpoint ? (AddressMetrics.Endpoint) endpoint : AddressMetrics.Endpoint.ADDRESS;
+    }
+
+    protected void writeAddress(Address address, JsonOutput output) {
+        AddressJsonWriter.write(address, output);
+    }
+
+    protected void writeStart(JsonOutput output) {
+        output.writeByte('[');
+    }
+
+    /**
+     * Writes an address of a collection.
+     *
+     * @param address address to write
+     * @param index position of the address in the collection
+     * @param output buffer receiving the address
+     */
+    protected void writeElement(Address address, int index, JsonOutput output) {
+        if (index > 0) {
+            output.writeByte(',');
+        }
+        AddressJsonWriter.write(address, output);
+    }
+
+    /**
+     * Writes a row of a batch.
+     *
+     * @param batch batch holding the address
+     * @param row index of the address in the batch
+     * @param output buffer receiving the address
+     */
+    protected void writeElement(AddressBatch batch, int row, JsonOutput output) {
+        if (row > 0) {
+            output.writeByte(',');
+        }
+        AddressJsonWriter.write(batch, row, output);
+    }
+
+    protected void writeEnd(JsonOutput output) {
+        output.writeByte(']');
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading addresses is not supported", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Reading addresses is not supported", inputMessage);
+    }
+}
@@ -0,0 +1,132 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Writes an <code>Address</code> as UTF-8 JSON by copying pre-encoded byte fragments into a <code>JsonOutput</code>.
+ * </p>
+ * <p>
+ * Field names are encoded once, and values loaded by <code>AddressData</code> are copied from the UTF-8 arena of the
+ * country's <code>Dictionary</code> by reference, without materializing a <code>String</code>. Only generated values such as
+ * house numbers and postal codes are encoded per address. The output matches Jackson's
+ * serialization of <code>Address</code> with <code>spring.jackson.default-property-inclusion=NON_NULL</code>.
+ * </p>
+ * <p>
+ * The rows of an <code>AddressBatch</code> are written from its columns in the same way, the house numbers and postal
+ * codes being copied from the batch's packed bytes.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressJsonWriter {
+    private static final byte[] HOUSE = fieldName("house");
+    private static final byte[] STREET = fieldName("street");
+    private static final byte[] POSTAL_CODE = fieldName("postalCode");
+    private static final byte[] CITY = fieldName("city");
+    private static final byte[] COUNTY = fieldName("county");
+    private static final byte[] STATE = fieldName("state");
+    private static final byte[] STATE_CODE = fieldName("stateCode");
+    private static final byte[] COUNTRY = fieldName("country");
+    private static final byte[] COUNTRY_CODE = fieldName("countryCode");
+
+    private AddressJsonWriter() {}
+
+    /**
+     * Writes an address as a JSON object, omitting null fields.
+     *
+     * @param address address to write
+     * @param output buffer receiving the JSON object
+     */
+    public static void write(Address address, JsonOutput output) {
+        Dictionary dictionary = address.dictionary;
+        output.writeByte('{');
+        boolean first = writeField(output, true, HOUSE, address.house);
+        if (address.streetRef != Dictionary.NO_VALUE){
+            if (address.houseInStreet == Address.HOUSE_NOT_IN_STREET){
+                first = writeField(output, first, STREET, dictionary, address.streetRef);
+            } else {
+                first = writeField(output, first, STREET, address.getStreet());
+            }
+        }
+        first = writeField(output, first, POSTAL_CODE, address.postalCode);
+        first = writeField(output, first, CITY, dictionary, address.cityRef);
+        first = writeField(output, first, COUNTY, dictionary, address.countyRef);
+        first = writeField(output, first, STATE, dictionary, address.stateRef);
+        first = writeField(output, first, STATE_CODE, dictionary, address.stateCodeRef);
+        first = writeField(output, first, COUNTRY, dictionary, address.countryRef);
+        writeField(output, first, COUNTRY_CODE, address.countryCode);
+        output.writeByte('}');
+    }
+
+    /**
+     * Writes a row of a batch as a JSON object, omitting null fields. The output is the same as for the address.
+     *
+     * @param batch batch holding the address
+     * @param row index of the address in the batch
+     * @param output buffer receiving the JSON object
+     */
+    public static void write(AddressBatch batch, int row, JsonOutput output) {
+        Dictionary dictionary = batch.dictionary(row);
+        output.writeByte('{');
+        boolean first = writeField(output, true, HOUSE, batch, row, AddressBatch.HOUSE);
+        if (batch.streetRef(row) != Dictionary.NO_VALUE){
+            if (batch.houseInStreet(row) == Address.HOUSE_NOT_IN_STREET){
+                first = writeField(output, first, STREET, dictionary, batch.streetRef(row));
+            } else {
+                first = writeField(output, first, STREET, batch.street(row));
+            }
+        }
+        first = writeField(output, first, POSTAL_CODE, batch, row, AddressBatch.POSTAL_CODE);
+        first = writeField(output, first, CITY, dictionary, batch.cityRef(row));
+        first = writeField(output, first, COUNTY, dictionary, batch.countyRef(row));
+        first = writeField(output, first, STATE, dictionary, batch.stateRef(row));
+        first = writeField(output, first, STATE_CODE, dictionary, batch.stateCodeRef(row));
+        first = writeField(output, first, COUNTRY, dictionary, batch.countryRef(row));
+        writeField(output, first, COUNTRY_CODE, batch.countryCode(row));
+        output.writeByte('}');
+    }
+
+    //returns whether the next field is still the first field of the object
+    private static boolean writeField(JsonOutput output, boolean first, byte[] name, String value) {
+        if (value == null) {
+            return first;
+        }
+        writeName(output, first, name);
+        output.writeString(value);
+        return false;
+    }
+
+    private static boolean writeField(JsonOutput output, boolean first, byte[] name, Dictionary dictionary, int ref) {
+        if (ref == Dictionary.NO_VALUE) {
+            return first;
+        }
+        writeName(output, first, name);
+        dictionary.writeJson(ref, output);
+        return false;
+    }
+
+    private static boolean writeField(JsonOutput output, boolean first, byte[] name, AddressBatch batch, int row, int field) {
+        if (batch.isNull(row, field)) {
+            return first;
+        }
+        writeName(output, first, name);
+        batch.writeJson(row, field, output);
+        return false;
+    }
+
+    private static void writeName(JsonOutput output, boolean first, byte[] name) {
+        if (!first) {
+            output.writeByte(',');
+        }
+        output.writeRaw(name);
+    }
+
+    private static byte[] fieldName(String name) {
+        return ("\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+    }
+}
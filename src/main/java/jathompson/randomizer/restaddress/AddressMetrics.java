@@ -0,0 +1,269 @@
+package jathompson.randomizer.restaddress;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.RingBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Micrometer meters of the REST calls, exposed through Actuator's <code>/actuator/prometheus</code> endpoint.
+ * </p>
+ * <ul>
+ *     <li><code>randomizer.requests</code> timer tagged by endpoint and country: time to generate the addresses of a
+ *     request, or to write the whole stream. Its count is the number of requests.</li>
+ *     <li><code>randomizer.addresses</code> counter tagged by country: number of addresses generated.</li>
+ *     <li><code>randomizer.batch.size</code> distribution tagged by endpoint: count of bulk and streaming requests.</li>
+ *     <li><code>randomizer.stage</code> timer tagged by endpoint and stage: time spent generating and serializing
+ *     addresses. Serialization of single and bulk responses is recorded by <code>AddressHttpMessageConverter</code>
+ *     under the <code>address</code>, <code>indexed</code> and <code>addresses</code> endpoints.</li>
+ *     <li><code>randomizer.rejected.countries</code> counter: requests for a country which is not supported.</li>
+ *     <li>With an <code>AddressPool</code>, <code>randomizer.pool.available</code> gauge tagged by country: pooled
+ *     addresses, <code>randomizer.pool.requests</code> counter tagged by result: requests served from the pool
+ *     (<code>hit</code>) or generating their own address (<code>miss</code>), and the <code>randomizer.pool.size</code>,
+ *     <code>randomizer.pool.refill.threshold</code> and <code>randomizer.pool.producers</code> settings as gauges.</li>
+ * </ul>
+ * <p>
+ * The country tag is the ISO 3166-1 alpha-3 code, or <code>random</code> when no country was requested. Every meter
+ * is registered up front, so recording looks up a prebuilt meter without allocating tags. With
+ * <code>randomizer.metrics.enabled=false</code> the <code>DISABLED</code> instance registers nothing and every
+ * method returns immediately.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressMetrics {
+
+    /**
+     * Metrics which register no meters and record nothing.
+     */
+    public static final AddressMetrics DISABLED = new AddressMetrics();
+
+    /**
+     * Country tag of requests without a country.
+     */
+    public static final String RANDOM_COUNTRY = "random";
+
+    /**
+     * Request attribute holding the <code>Endpoint</code> of a single address response, <code>ADDRESS</code> when absent.
+     */
+    public static final String ENDPOINT_ATTRIBUTE = AddressMetrics.class.getName() + ".endpoint";
+
+    /**
+     * REST calls with their own meters.
+     */
+    public enum Endpoint {
+        ADDRESS("address"), INDEXED("indexed"), ADDRESSES("addresses"), STREAM("stream"), EXPORT("export");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final boolean enabled;
+    //per country tag, indexed by endpoint ordinal
+    private final Map<String, Timer[]> requestTimers = new HashMap<>();
+    private final Map<String, Counter> addressCounters = new HashMap<>();
+    private final DistributionSummary[] batchSizes = new DistributionSummary[Endpoint.values().length];
+    private final Timer[] generationTimers = new Timer[Endpoint.values().length];
+    private final Timer[] serializationTimers = new Timer[Endpoint.values().length];
+    private final Counter rejectedCountries;
+    private final MeterRegistry registry;
+    //registered by bindPool before the pool serves requests
+    private Counter poolHits;
+    private Counter poolMisses;
+
+    private AddressMetrics() {
+        enabled = false;
+        rejectedCountries = null;
+        registry = null;
+    }
+
+    /**
+     * Registers the meters of every implemented country.
+     *
+     * @param registry registry receiving the meters
+     */
+    public AddressMetrics(MeterRegistry registry) {
+        enabled = true;
+        this.registry = registry;
+        for (String country : CountryRegistry.getImplementedCountryCodes()) {
+            registerCountry(registry, country);
+        }
+        registerCountry(registry, RANDOM_COUNTRY);
+        for (Endpoint endpoint : new Endpoint[]{Endpoint.ADDRESSES, Endpoint.STREAM}) {
+            batchSizes[endpoint.ordinal()] = DistributionSummary.builder("randomizer.batch.size")
+                    .description("Number of addresses requested").baseUnit("addresses")
+                    .tag("endpoint", endpoint.tag).publishPercentileHistogram().register(registry);
+        }
+        for (Endpoint endpoint : Endpoint.values()) {
+            generationTimers[endpoint.ordinal()] = Timer.builder("randomizer.stage")
+                    .description("Time spent per stage of creating a response")
+                    .tags("endpoint", endpoint.tag, "stage", "generation").register(registry);
+            serializationTimers[endpoint.ordinal()] = Timer.builder("randomizer.stage")
+                    .description("Time spent per stage of creating a response")
+                    .tags("endpoint", endpoint.tag, "stage", "serialization").register(registry);
+        }
+        rejectedCountries = Counter.builder("randomizer.rejected.countries")
+                .description("Requests for a country which is not supported").register(registry);
+    }
+
+    private void registerCountry(MeterRegistry registry, String country) {
+        Timer[] timers = new Timer[Endpoint.values().length];
+        for (Endpoint endpoint : Endpoint.values()) {
+            timers[endpoint.ordinal()] = Timer.builder("randomizer.requests")
+                    .description("Time to generate the addresses of a request")
+                    .tags("endpoint", endpoint.tag, "country", country).publishPercentileHistogram().register(registry);
+        }
+        requestTimers.put(country, timers);
+        addressCounters.put(country, Counter.builder("randomizer.addresses")
+                .description("Number of addresses generated").baseUnit("addresses")
+                .tag("country", country).register(registry));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start time of a measurement.
+     *
+     * @return <code>System.nanoTime()</code>, or 0 when disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a request whose addresses were generated since start, before the response is serialized.
+     *
+     * @param endpoint REST call
+     * @param country requested country in any case, or <code>AddressData.DEFAULT</code>
+     * @param count number of addresses generated
+     * @param start value of <code>start()</code> when the request was received
+     */
+    public void recordRequest(Endpoint endpoint, String country, int count, long start) {
+        if (!enabled) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        generationTimers[endpoint.ordinal()].record(elapsed, TimeUnit.NANOSECONDS);
+        recordCountry(endpoint, country, count, elapsed);
+    }
+
+    /**
+     * Records a completed or aborted stream.
+     *
+     * @param country requested country in any case, or <code>AddressData.DEFAULT</code>
+     * @param count number of addresses written
+     * @param start value of <code>start()</code> when the stream started
+     * @param generationNanos time spent generating addresses
+     * @param serializationNanos time spent writing addresses
+     */
+    public void recordStream(String country, int count, long start, long generationNanos, long serializationNanos) {
+        recordWritten(Endpoint.STREAM, country, count, start, generationNanos, serializationNanos);
+    }
+
+    /**
+     * Records a written or aborted partition of an export job.
+     *
+     * @param country requested country in any case, or <code>AddressData.DEFAULT</code>
+     * @param count number of addresses written
+     * @param start value of <code>start()</code> when the partition started
+     * @param generationNanos time spent generating addresses
+     * @param serializationNanos time spent serializing, compressing and writing addresses
+     */
+    public void recordExportPartition(String country, int count, long start, long generationNanos, long serializationNanos) {
+        recordWritten(Endpoint.EXPORT, country, count, start, generationNanos, serializationNanos);
+    }
+
+    private void recordWritten(Endpoint endpoint, String country, int count, long start, long generationNanos, long serializationNanos) {
+        if (!enabled) {
+            return;
+        }
+        generationTimers[endpoint.ordinal()].record(generationNanos, TimeUnit.NANOSECONDS);
+        serializationTimers[endpoint.ordinal()].record(serializationNanos, TimeUnit.NANOSECONDS);
+        recordCountry(endpoint, country, count, System.nanoTime() - start);
+    }
+
+    /**
+     * Records the serialization of a response.
+     *
+     * @param endpoint <code>ADDRESS</code> or <code>INDEXED</code> for a single address, <code>ADDRESSES</code> for a list
+     * @param start value of <code>start()</code> when serialization started
+     */
+    public void recordSerialization(Endpoint endpoint, long start) {
+        if (enabled) {
+            serializationTimers[endpoint.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordRejectedCountry() {
+        if (enabled) {
+            rejectedCountries.increment();
+        }
+    }
+
+    /**
+     * Registers the meters of an address pool.
+     *
+     * @param pool pool serving single address requests
+     */
+    public void bindPool(AddressPool pool) {
+        if (!enabled) {
+            return;
+        }
+        pool.getBuffers().forEach((country, buffer) -> Gauge.builder("randomizer.pool.available", buffer, RingBuffer::size)
+                .description("Pre-generated addresses in the pool").baseUnit("addresses")
+                .tag("country", country).register(registry));
+        Gauge.builder("randomizer.pool.size", pool, AddressPool::getSize)
+                .description("Capacity of each buffer of the pool").baseUnit("addresses").register(registry);
+        Gauge.builder("randomizer.pool.refill.threshold", pool, AddressPool::getRefillThreshold)
+                .description("Pooled addresses below which a buffer is refilled").baseUnit("addresses").register(registry);
+        Gauge.builder("randomizer.pool.producers", pool, AddressPool::getProducerCount)
+                .description("Threads filling the pool").register(registry);
+        poolHits = Counter.builder("randomizer.pool.requests").description("Requests for a pooled address")
+                .tag("result", "hit").register(registry);
+        poolMisses = Counter.builder("randomizer.pool.requests").description("Requests for a pooled address")
+                .tag("result", "miss").register(registry);
+    }
+
+    public void recordPoolRequest(boolean hit) {
+        if (enabled) {
+            (hit ? poolHits : poolMisses).increment();
+        }
+    }
+
+    private void recordCountry(Endpoint endpoint, String country, int count, long elapsed) {
+        String tag = countryTag(country);
+        Timer[] timers = requestTimers.get(tag);
+        if (timers == null) {
+            return;
+        }
+        timers[endpoint.ordinal()].record(elapsed, TimeUnit.NANOSECONDS);
+        addressCounters.get(tag).increment(count);
+        DistributionSummary batchSize = batchSizes[endpoint.ordinal()];
+        if (batchSize != null) {
+            batchSize.record(count);
+        }
+    }
+
+    //canonical code of the registered generator, so the tag lookup needs no upper case copy of the request parameter
+    private static String countryTag(String country) {
+        if (AddressData.DEFAULT.equalsIgnoreCase(country)) {
+            return RANDOM_COUNTRY;
+        }
+        CountryAddressGenerator generator = CountryRegistry.lookup(country);
+        return generator == null ? null : generator.getCountryCode();
+    }
+}
@@ -1,10 +1,11 @@
 package jathompson.randomizer.restaddress;
 
 import jathompson.randomizer.restaddress.util.AddressData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.FieldBuilder;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.StateTable;
 
-import java.util.concurrent.ThreadLocalRandom;
 /**
  * <p>
  * Pseudo-randomly generated address from the Netherlands.
@@ -31,53 +32,104 @@ import java.util.concurrent.ThreadLocalRandom;
  * @version 1.0
  */
 public class AddressNLD extends Address{
-    private static final Logger LOGGER = LoggerFactory.getLogger(AddressNLD.class);
+    public AddressNLD(){
+        this(RandomSource.threadLocal());
+    }
+
+    /**
+     * Creates an address using the specified source of pseudo-random numbers.
+     *
+     * @param random source of pseudo-random numbers
+     */
+    public AddressNLD(RandomSource random){
+        this(random, AddressConstraints.NONE);
+    }
 
-    public AddressNLD() {
+    /**
+     * Creates an address using the specified source of pseudo-random numbers, with the requested field values.
+     *
+     * @param random source of pseudo-random numbers
+     * @param constraints requested state, city and postal code prefix
+     */
+    public AddressNLD(RandomSource random, AddressConstraints constraints){
         super();
-        createHouse();
-        createStreet();
-        createPostalCode();
-        createCity();
+        CountryData data = AddressData.getCountryData(AddressData.NETHERLANDS);
+        dictionary = data.getDictionary();
+        createHouse(random);
+        createStreet(data, random);
+        createPostalCode(random);
+        postalCode = constraints.applyPostalPrefix(postalCode);
+        createCity(data, random, constraints);
         //NLD does not have counties/municipalities smaller than provence
-        county = city;
-        createStateAndCode();
-        createCountry();
+        countyRef = cityRef;
+        createStateAndCode(data, random, constraints);
+        createCountry(data, random);
         countryCode = AddressData.NETHERLANDS;
-        LOGGER.debug("Generated address is: {}, {}, {}, {}, {}, {}, {}, {}", house, street, postalCode, city, county, state, stateCode, county);
+        AddressDiagnostics.generated(this);
     }
 
-    private void createStreet(){
-        street = AddressData.getRandomStreetNL();
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
+    private void createStreet(CountryData data, RandomSource random){
+        streetRef = data.getStreets(AddressData.NL).randomRef(random);
+        if (random.nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
             appendHouseToStreet();
         }
     }
 
-    private void createPostalCode(){
-        StringBuilder tempCode = new StringBuilder(String.format("%04d", ThreadLocalRandom.current().nextInt(10000)));
-        tempCode.append(" ");
-        postalCode = tempCode.append(AddressData.getRandomLetter()).append(AddressData.getRandomLetter()).toString();
+    private void createPostalCode(RandomSource random){
+        FieldBuilder tempCode = FieldBuilder.get().appendDigits(random.nextInt(10000), 4);
+        tempCode.append(' ');
+        postalCode = tempCode.append(AddressData.getRandomLetter(random)).append(AddressData.getRandomLetter(random)).toString();
     }
 
-    private void createCity(){
-        city = AddressData.getRandomCityNL();
+    private void createCity(CountryData data, RandomSource random, AddressConstraints constraints){
+        cityRef = constrainCity(data, constraints, AddressData.NL, data.getCities(AddressData.NL).randomRef(random));
     }
 
-    private void createStateAndCode(){
-        int i = ThreadLocalRandom.current().nextInt(AddressData.statesNLD.size());
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_PERCENT) {
-            state = AddressData.statesNLD.get(i);
+    private void createStateAndCode(CountryData data, RandomSource random, AddressConstraints constraints){
+        StateTable states = data.getStates();
+        int i = constrainStateRow(data, constraints, states.randomRow(random), random);
+        if (random.nextInt(100) < AddressConstants.STATE_PERCENT) {
+            stateRef = states.nameRef(i);
         }
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_CODE_PERCENT) {
-            stateCode = AddressData.stateCodesNLD.get(i);
+        if (random.nextInt(100) < AddressConstants.STATE_CODE_PERCENT) {
+            stateCodeRef = states.codeRef(i);
         }
+        includeConstrainedState(states, i, constraints);
     }
 
-    private void createCountry(){
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
-            country = AddressData.countryNLD.get(ThreadLocalRandom.current().nextInt(AddressData.countryNLD.size()));
+    private void createCountry(CountryData data, RandomSource random){
+        if (random.nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
+            countryRef = data.getCountryNames().randomRef(random);
         }
     }
-}
 
+    /**
+     * Registers <code>AddressNLD</code> with the <code>CountryRegistry</code>.
+     */
+    public static class Generator implements CountryAddressGenerator {
+        @Override
+        public String getCountryCode(){
+            return AddressData.NETHERLANDS;
+        }
+
+        @Override
+        public Address createAddress(RandomSource random){
+            return new AddressNLD(random);
+        }
+
+        @Override
+        public boolean supportsConstraints(){
+            return true;
+        }
+
+        @Override
+        public Address createAddress(RandomSource random, AddressConstraints constraints){
+            return new AddressNLD(random, constraints);
+        }
+
+        @Override
+        public String getPostalCodeFormat(){
+            return "9999 AA";
+        }
+    }
+}
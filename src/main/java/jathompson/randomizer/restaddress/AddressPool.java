@@ -0,0 +1,210 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.RingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Pool of pre-generated addresses for <code>/randomizer/address</code> without a seed, enabled with
+ * <code>randomizer.pool.enabled=true</code>. Background producer threads keep a <code>RingBuffer</code> per enabled
+ * country, and one for requests without a country, filled with addresses already serialized by
+ * <code>AddressJsonWriter</code>, so a request only dequeues the bytes of its response. A request finding its buffer
+ * empty generates its address itself.
+ * </p>
+ * <p>
+ * Each buffer holds <code>randomizer.pool.size</code> addresses and is refilled by its producer once it holds
+ * <code>randomizer.pool.refill-threshold</code> or fewer. The buffers are shared among
+ * <code>randomizer.pool.producers</code> threads. Pooled addresses were generated from the data and enabled countries
+ * of the time, so up to one buffer of addresses is served from the previous data after a reload.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+@ConditionalOnProperty(name = "randomizer.pool.enabled", havingValue = "true")
+public class AddressPool implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AddressPool.class);
+
+    //producers without work check their buffers at this interval unless a request wakes them first
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    //producers whose country fails to generate wait this long before retrying
+    private static final long FAILURE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int refillThreshold;
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final List<Thread> producers = new ArrayList<>();
+    private final AddressMetrics metrics;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the buffers of the enabled countries and starts the producers.
+     *
+     * @param size addresses held by each buffer
+     * @param refillThreshold number of addresses at or below which a buffer is refilled
+     * @param producerCount threads filling the buffers
+     * @param metrics metrics of the pool
+     * @param settings data settings, applied before the producers generate their first addresses
+     */
+    public AddressPool(@Value("${randomizer.pool.size:1024}") int size,
+                       @Value("${randomizer.pool.refill-threshold:512}") int refillThreshold,
+                       @Value("${randomizer.pool.producers:1}") int producerCount,
+                       AddressMetrics metrics, DatasetSettings settings) {
+        if (refillThreshold < 0 || refillThreshold >= size) {
+            throw new IllegalArgumentException("Refill threshold " + refillThreshold + " is outside the supported range 0-" + (size - 1));
+        }
+        if (producerCount < 1) {
+            throw new IllegalArgumentException("Producer count " + producerCount + " must be at least 1");
+        }
+        this.refillThreshold = refillThreshold;
+        this.metrics = metrics;
+        List<String> countries = new ArrayList<>(settings.getEnabledCountries());
+        countries.add(AddressData.DEFAULT);
+        List<List<Slot>> assigned = new ArrayList<>();
+        for (int i = 0; i < Math.min(producerCount, countries.size()); i++) {
+            assigned.add(new ArrayList<>());
+        }
+        for (int i = 0; i < countries.size(); i++) {
+            Slot slot = new Slot(countries.get(i), new RingBuffer<>(size));
+            slots.put(tag(countries.get(i)), slot);
+            assigned.get(i % assigned.size()).add(slot);
+        }
+        for (int i = 0; i < assigned.size(); i++) {
+            List<Slot> producerSlots = assigned.get(i);
+            Thread producer = new Thread(() -> produce(producerSlots), "address-pool-" + i);
+            producer.setDaemon(true);
+            for (Slot slot : producerSlots) {
+                slot.producer = producer;
+            }
+            producers.add(producer);
+        }
+        metrics.bindPool(this);
+        producers.forEach(Thread::start);
+        LOGGER.info("Pooling {} addresses for {} with {} producers", size, slots.keySet(), producers.size());
+    }
+
+    /**
+     * Takes a pre-generated address of the specified country.
+     *
+     * @param country requested country in any case, or <code>AddressData.DEFAULT</code>
+     * @return UTF-8 JSON of the address, or null if the pool holds none
+     */
+    public byte[] poll(String country) {
+        Slot slot = slots.get(tag(country));
+        byte[] json = slot == null ? null : slot.buffer.poll();
+        //concurrent polls may step over the threshold, so every poll at or below it may wake the producer, once per refill
+        if (json != null && slot.buffer.size() <= refillThreshold && !slot.refillRequested.get()
+                && slot.refillRequested.compareAndSet(false, true)) {
+            LockSupport.unpark(slot.producer);
+        }
+        metrics.recordPoolRequest(json != null);
+        return json;
+    }
+
+    public int getSize() {
+        return slots.values().iterator().next().buffer.capacity();
+    }
+
+    public int getRefillThreshold() {
+        return refillThreshold;
+    }
+
+    public int getProducerCount() {
+        return producers.size();
+    }
+
+    /**
+     * Buffers of the pool.
+     *
+     * @return buffer per country code, <code>random</code> for requests without a country
+     */
+    public Map<String, RingBuffer<byte[]>> getBuffers() {
+        Map<String, RingBuffer<byte[]>> buffers = new HashMap<>();
+        slots.forEach((tag, slot) -> buffers.put(tag, slot.buffer));
+        return Collections.unmodifiableMap(buffers);
+    }
+
+    private void produce(List<Slot> producerSlots) {
+        JsonOutput output = new JsonOutput(JsonOutput.FLUSH_THRESHOLD);
+        while (running) {
+            long park = IDLE_PARK_NANOS;
+            for (Slot slot : producerSlots) {
+                if (slot.buffer.size() <= refillThreshold && !fill(slot, output)) {
+                    park = FAILURE_PARK_NANOS;
+                }
+            }
+            LockSupport.parkNanos(this, park);
+        }
+    }
+
+    //fills the buffer up to its capacity, false if the country's addresses cannot be generated
+    private boolean fill(Slot slot, JsonOutput output) {
+        try {
+            //cleared before filling, so a poll below the threshold during the fill wakes the producer again
+            slot.refillRequested.set(false);
+            while (running && slot.buffer.size() < slot.buffer.capacity()) {
+                output.reset();
+                AddressJsonWriter.write(AddressFactory.createAddress(slot.country, RandomSource.threadLocal()), output);
+                if (!slot.buffer.offer(output.toByteArray())) {
+                    break;
+                }
+            }
+            slot.failing = false;
+            return true;
+        } catch (RuntimeException exception) {
+            if (!slot.failing) {
+                LOGGER.error("Pooling {} addresses failed, requests generate their own until it recovers", slot.country, exception);
+                slot.failing = true;
+            }
+            return false;
+        }
+    }
+
+    //country code of the registered generator, or random when no country was requested
+    private static String tag(String country) {
+        if (AddressData.DEFAULT.equalsIgnoreCase(country)) {
+            return AddressMetrics.RANDOM_COUNTRY;
+        }
+        CountryAddressGenerator generator = CountryRegistry.lookup(country);
+        return generator == null ? null : generator.getCountryCode();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        producers.forEach(LockSupport::unpark);
+    }
+
+    private static final class Slot {
+        private final String country;
+        private final RingBuffer<byte[]> buffer;
+        private Thread producer;
+        //set by the poll waking the producer, cleared by the producer when it refills
+        private final AtomicBoolean refillRequested = new AtomicBoolean();
+        //only touched by the producer thread
+        private boolean failing;
+
+        private Slot(String country, RingBuffer<byte[]> buffer) {
+            this.country = country;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.JsonOutput;
+
+/**
+ * Writes an <code>Address</code> as a Protocol Buffers <code>Address</code> message and a collection of addresses as
+ * an <code>AddressList</code> message with <code>AddressProtobufWriter</code>, for requests accepting
+ * <code>application/x-protobuf</code>. The messages are described by <code>/address.proto</code>.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class AddressProtobufHttpMessageConverter extends AddressHttpMessageConverter {
+
+    public AddressProtobufHttpMessageConverter(AddressMetrics metrics) {
+        super(AddressController.APPLICATION_PROTOBUF, metrics);
+    }
+
+    @Override
+    protected void writeAddress(Address address, JsonOutput output) {
+        AddressProtobufWriter.write(address, output);
+    }
+
+    @Override
+    protected void writeStart(JsonOutput output) {
+        //an AddressList message is only the sequence of its elements
+    }
+
+    @Override
+    protected void writeElement(Address address, int index, JsonOutput output) {
+        AddressProtobufWriter.writeElement(address, output);
+    }
+
+    @Override
+    protected void writeElement(AddressBatch batch, int row, JsonOutput output) {
+        AddressProtobufWriter.writeElement(batch, row, output);
+    }
+
+    @Override
+    protected void writeEnd(JsonOutput output) {
+    }
+}
@@ -0,0 +1,157 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.Dictionary;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+
+/**
+ * <p>
+ * Writes an <code>Address</code> in the Protocol Buffers binary format of the <code>Address</code> message of
+ * <code>address.proto</code>, published at <code>/address.proto</code>, into a <code>JsonOutput</code>.
+ * </p>
+ * <p>
+ * Every field is a string field, written as its tag, its length and its UTF-8 bytes. Values loaded by
+ * <code>AddressData</code> are copied from the country's <code>Dictionary</code> by reference and null fields are
+ * omitted, as in <code>AddressJsonWriter</code>. Bulk and streaming responses are an <code>AddressList</code>
+ * message whose addresses are written one by one with <code>writeElement</code>; since a concatenation of
+ * <code>AddressList</code> messages is itself an <code>AddressList</code>, a stream can be parsed as one message.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AddressProtobufWriter {
+    //tags of the fields of address.proto, field number shifted left by 3 with wire type 2 (length-delimited)
+    private static final int HOUSE = 1 << 3 | 2;
+    private static final int STREET = 2 << 3 | 2;
+    private static final int POSTAL_CODE = 3 << 3 | 2;
+    private static final int CITY = 4 << 3 | 2;
+    private static final int COUNTY = 5 << 3 | 2;
+    private static final int STATE = 6 << 3 | 2;
+    private static final int STATE_CODE = 7 << 3 | 2;
+    private static final int COUNTRY = 8 << 3 | 2;
+    private static final int COUNTRY_CODE = 9 << 3 | 2;
+    //AddressList.addresses
+    private static final int ADDRESSES = 1 << 3 | 2;
+
+    private AddressProtobufWriter() {}
+
+    /**
+     * Writes an address as an <code>Address</code> message.
+     *
+     * @param address address to write
+     * @param output buffer receiving the message
+     */
+    public static void write(Address address, JsonOutput output) {
+        Dictionary dictionary = address.dictionary;
+        writeField(output, HOUSE, address.house);
+        if (address.streetRef != Dictionary.NO_VALUE){
+            output.writeByte(STREET);
+            int start = output.size();
+            if (address.houseInStreet == Address.HOUSE_BEFORE_STREET){
+                output.writeUtf8(address.house);
+                output.writeByte(' ');
+            }
+            dictionary.writeUtf8(address.streetRef, output);
+            if (address.houseInStreet == Address.HOUSE_AFTER_STREET){
+                output.writeByte(' ');
+                output.writeUtf8(address.house);
+            }
+            output.insertVarint(start, output.size() - start);
+        }
+        writeField(output, POSTAL_CODE, address.postalCode);
+        writeField(output, CITY, dictionary, address.cityRef);
+        writeField(output, COUNTY, dictionary, address.countyRef);
+        writeField(output, STATE, dictionary, address.stateRef);
+        writeField(output, STATE_CODE, dictionary, address.stateCodeRef);
+        writeField(output, COUNTRY, dictionary, address.countryRef);
+        writeField(output, COUNTRY_CODE, address.countryCode);
+    }
+
+    /**
+     * Writes an address as an element of the <code>addresses</code> field of an <code>AddressList</code> message.
+     *
+     * @param address address to write
+     * @param output buffer receiving the element
+     */
+    public static void writeElement(Address address, JsonOutput output) {
+        output.writeByte(ADDRESSES);
+        int start = output.size();
+        write(address, output);
+        output.insertVarint(start, output.size() - start);
+    }
+
+    /**
+     * Writes a row of a batch as an <code>Address</code> message. The output is the same as for the address.
+     *
+     * @param batch batch holding the address
+     * @param row index of the address in the batch
+     * @param output buffer receiving the message
+     */
+    public static void write(AddressBatch batch, int row, JsonOutput output) {
+        Dictionary dictionary = batch.dictionary(row);
+        writeField(output, HOUSE, batch, row, AddressBatch.HOUSE);
+        if (batch.streetRef(row) != Dictionary.NO_VALUE){
+            output.writeByte(STREET);
+            int start = output.size();
+            if (batch.houseInStreet(row) == Address.HOUSE_BEFORE_STREET){
+                batch.writeUtf8(row, AddressBatch.HOUSE, output);
+                output.writeByte(' ');
+            }
+            dictionary.writeUtf8(batch.streetRef(row), output);
+            if (batch.houseInStreet(row) == Address.HOUSE_AFTER_STREET){
+                output.writeByte(' ');
+                batch.writeUtf8(row, AddressBatch.HOUSE, output);
+            }
+            output.insertVarint(start, output.size() - start);
+        }
+        writeField(output, POSTAL_CODE, batch, row, AddressBatch.POSTAL_CODE);
+        writeField(output, CITY, dictionary, batch.cityRef(row));
+        writeField(output, COUNTY, dictionary, batch.countyRef(row));
+        writeField(output, STATE, dictionary, batch.stateRef(row));
+        writeField(output, STATE_CODE, dictionary, batch.stateCodeRef(row));
+        writeField(output, COUNTRY, dictionary, batch.countryRef(row));
+        writeField(output, COUNTRY_CODE, batch.countryCode(row));
+    }
+
+    /**
+     * Writes a row of a batch as an element of the <code>addresses</code> field of an <code>AddressList</code>
+     * message.
+     *
+     * @param batch batch holding the address
+     * @param row index of the address in the batch
+     * @param output buffer receiving the element
+     */
+    public static void writeElement(AddressBatch batch, int row, JsonOutput output) {
+        output.writeByte(ADDRESSES);
+        int start = output.size();
+        write(batch, row, output);
+        output.insertVarint(start, output.size() - start);
+    }
+
+    private static void writeField(JsonOutput output, int tag, String value) {
+        if (value != null) {
+            output.writeByte(tag);
+            int start = output.size();
+            output.writeUtf8(value);
+            output.insertVarint(start, output.size() - start);
+        }
+    }
+
+    private static void writeField(JsonOutput output, int tag, Dictionary dictionary, int ref) {
+        if (ref != Dictionary.NO_VALUE) {
+            output.writeByte(tag);
+            int start = output.size();
+            dictionary.writeUtf8(ref, output);
+            output.insertVarint(start, output.size() - start);
+        }
+    }
+
+    private static void writeField(JsonOutput output, int tag, AddressBatch batch, int row, int field) {
+        if (!batch.isNull(row, field)) {
+            output.writeByte(tag);
+            int start = output.size();
+            batch.writeUtf8(row, field, output);
+            output.insertVarint(start, output.size() - start);
+        }
+    }
+}
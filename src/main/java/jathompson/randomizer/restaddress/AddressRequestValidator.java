@@ -0,0 +1,96 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.Dictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Validates the parameters shared by the address REST calls of the servlet and reactive stacks.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+public class AddressRequestValidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AddressRequestValidator.class);
+
+    private final AddressMetrics metrics;
+
+    //requests are only validated once the enabled countries and data settings apply
+    public AddressRequestValidator(AddressMetrics metrics, DatasetSettings settings) {
+        this.metrics = metrics;
+        LOGGER.debug("Validating requests for countries {}", settings.getEnabledCountries());
+    }
+
+    void validateCountry(String country){
+        LOGGER.debug("Country is {}", country);
+        if ( !(AddressData.DEFAULT.equalsIgnoreCase(country) || CountryRegistry.lookup(country) != null)){
+              LOGGER.error("Country {} is not supported by this REST call", country);
+              metrics.recordRejectedCountry();
+              throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Country is not supported");
+        }
+    }
+
+    void validateCount(int count, int max){
+        if (count < 1 || count > max){
+            LOGGER.error("Count {} is outside the supported range 1-{}", count, max);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Count must be between 1 and " + max);
+        }
+    }
+
+    /**
+     * Checks the requested field values against the indexes of the country's data.
+     *
+     * @param country validated country
+     * @param state requested state name or code, may be null
+     * @param city requested city name, may be null
+     * @param postalPrefix requested postal code prefix, may be null
+     * @return constraints of the request, <code>AddressConstraints.NONE</code> if no value is requested
+     */
+    AddressConstraints validateConstraints(String country, String state, String city, String postalPrefix){
+        AddressConstraints constraints = AddressConstraints.of(state, city, postalPrefix);
+        if (constraints.isEmpty()){
+            return constraints;
+        }
+        if (AddressData.DEFAULT.equalsIgnoreCase(country)){
+            LOGGER.error("Constraints {}, {}, {} require a country", state, city, postalPrefix);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "State, city and postal prefix require a country");
+        }
+        CountryAddressGenerator generator = CountryRegistry.lookup(country);
+        requireConstraintSupport(generator);
+        CountryData data = AddressData.getCountryData(generator.getCountryCode());
+        if (constraints.getState() != null && data.findStateRows(constraints.getState()) == null){
+            LOGGER.error("State {} does not exist in {}", state, country);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "State does not exist");
+        }
+        if (constraints.getCity() != null && data.findCityRef(null, constraints.getCity()) == Dictionary.NO_VALUE){
+            LOGGER.error("City {} does not exist in {}", city, country);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "City does not exist");
+        }
+        if (!constraints.fitsPostalFormat(generator.getPostalCodeFormat())){
+            LOGGER.error("Postal prefix {} does not fit the postal codes of {}", postalPrefix, country);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Postal prefix does not fit the postal code format");
+        }
+        return constraints;
+    }
+
+    static void requireConstraintSupport(CountryAddressGenerator generator){
+        if (!generator.supportsConstraints()){
+            LOGGER.error("Country {} does not support constrained addresses", generator.getCountryCode());
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "State, city and postal prefix are not supported for this country");
+        }
+    }
+
+    void validateOffset(long offset, int count){
+        if (offset < 0 || offset > Long.MAX_VALUE - count){
+            LOGGER.error("Offset {} is outside the supported range", offset);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Offset must not be negative");
+        }
+    }
+}
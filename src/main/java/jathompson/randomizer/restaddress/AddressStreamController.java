@@ -0,0 +1,177 @@
+package jathompson.randomizer.restaddress;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Streaming REST call of the servlet stack. Each stream is written by a thread of the async task executor, which is
+ * backed by virtual threads when <code>spring.threads.virtual.enabled=true</code> on Java 21 or later.
+ * <code>ReactiveAddressController</code> serves the same call when the application runs reactive.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AddressStreamController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AddressStreamController.class);
+
+    private final AddressMetrics metrics;
+    private final AddressRequestValidator validator;
+    private final UniqueFilterFactory uniqueFilters;
+    private final BinaryObjectMappers binaryMappers;
+
+    public AddressStreamController(AddressMetrics metrics, AddressRequestValidator validator, UniqueFilterFactory uniqueFilters,
+                                   BinaryObjectMappers binaryMappers) {
+        this.metrics = metrics;
+        this.validator = validator;
+        this.uniqueFilters = uniqueFilters;
+        this.binaryMappers = binaryMappers;
+    }
+
+    /**
+     * Streams addresses to the client as they are created so memory use is constant regardless of count.
+     * The response is newline delimited JSON when the client accepts <code>application/x-ndjson</code>,
+     * otherwise a chunked JSON array. A client accepting <code>application/x-protobuf</code> receives one
+     * <code>AddressList</code> message of <code>/address.proto</code>, and a client accepting
+     * <code>application/cbor</code> or <code>application/x-jackson-smile</code> an array in that format, written by
+     * Jackson. Generation stops as soon as the client disconnects.
+     * Seed, offset, unique and the constraints behave the same as for <code>/randomizer/addresses</code>.
+     *
+     * @param country Type of address to generate
+     * @param count Number of addresses to generate, limited to <code>AddressConstants.MAX_STREAM_COUNT</code>
+     * @param seed Optional seed used to reproduce the stream
+     * @param offset Index of the first address when a seed is specified
+     * @param unique Whether the addresses of the stream must be unique
+     * @param state Optional state name or code of every address, requires a country
+     * @param city Optional city of every address, requires a country
+     * @param postalPrefix Optional leading characters of every postal code, requires a country
+     * @param accept Accept header of the request
+     * @return response body writing addresses directly to the output stream
+     * @throws org.springframework.web.server.ResponseStatusException if the country, count, offset or a constraint is invalid
+     */
+    @GetMapping("/randomizer/addresses/stream")
+    public ResponseEntity<StreamingResponseBody> streamRandomAddresses(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country,
+                                                                       @RequestParam(value = "count", defaultValue = "10") int count,
+                                                                       @RequestParam(value = "seed", required = false) Long seed,
+                                                                       @RequestParam(value = "offset", defaultValue = "0") long offset,
+                                                                       @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+                                                                       @RequestParam(value = "state", required = false) String state,
+                                                                       @RequestParam(value = "city", required = false) String city,
+                                                                       @RequestParam(value = "postalPrefix", required = false) String postalPrefix,
+                                                                       @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) String accept) {
+        validator.validateCountry(country);
+        validator.validateCount(count, AddressConstants.MAX_STREAM_COUNT);
+        validator.validateOffset(offset, count);
+        AddressConstraints constraints = validator.validateConstraints(country, state, city, postalPrefix);
+        boolean ndjson = MediaType.parseMediaTypes(accept).stream().anyMatch(AddressController.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        MediaType binaryType = ndjson ? null : AddressController.acceptedBinaryType(accept);
+        boolean protobuf = AddressController.APPLICATION_PROTOBUF.equals(binaryType);
+        //CBOR and Smile are written by Jackson, without flushing the response after every address
+        ObjectMapper mapper = MediaType.APPLICATION_CBOR.equals(binaryType) ? binaryMappers.getCbor()
+                : AddressController.APPLICATION_SMILE.equals(binaryType) ? binaryMappers.getSmile() : null;
+        ObjectWriter writer = mapper == null ? null : mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        //created last, the filter's memory is only released once the body has been written
+        UniqueFilter filter = uniqueFilters.create(unique, count);
+        //the stream is written by another thread, which traces only if the request did
+        String traceId = AddressDiagnostics.getTraceId();
+        StreamingResponseBody body = outputStream -> {
+            AddressDiagnostics.setTraceId(traceId);
+            //addresses are buffered and handed to the servlet container in blocks instead of flushing after every address
+            JsonOutput output = new JsonOutput(JsonOutput.FLUSH_THRESHOLD * 2);
+            int written = 0;
+            //stage times are only measured when metrics are enabled, each clock read ends one stage and starts the next
+            boolean timed = metrics.isEnabled();
+            long start = metrics.start();
+            long generationNanos = 0;
+            long serializationNanos = 0;
+            JsonGenerator generator = null;
+            try {
+                if (writer != null){
+                    generator = mapper.getFactory().createGenerator(outputStream);
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.writeStartArray();
+                } else if (!ndjson && !protobuf){
+                    output.writeByte('[');
+                }
+                long clock = start;
+                for (; written < count; written++){
+                    RandomSource random = seed == null ? RandomSource.threadLocal() : RandomSource.forIndex(seed, offset + written);
+                    Address address;
+                    try {
+                        address = AddressFactory.createAddress(country, random, constraints, filter);
+                    } catch (UniqueAddressesExhaustedException exhausted) {
+                        //the status was sent with the first block, end the document so the client can still parse it
+                        LOGGER.warn("Stream ended after {} of {} addresses: {}", written, count, exhausted.getReason());
+                        break;
+                    }
+                    if (timed){
+                        long generated = System.nanoTime();
+                        generationNanos += generated - clock;
+                        clock = generated;
+                    }
+                    if (writer != null){
+                        writer.writeValue(generator, address);
+                    } else {
+                        if (protobuf){
+                            AddressProtobufWriter.writeElement(address, output);
+                        } else {
+                            if (written > 0){
+                                output.writeByte(ndjson ? '\n' : ',');
+                            }
+                            AddressJsonWriter.write(address, output);
+                        }
+                        output.flushIfFull(outputStream);
+                    }
+                    if (timed){
+                        long serialized = System.nanoTime();
+                        serializationNanos += serialized - clock;
+                        clock = serialized;
+                    }
+                }
+                if (writer != null){
+                    generator.writeEndArray();
+                    generator.close();
+                } else {
+                    if (!protobuf){
+                        output.writeByte(ndjson ? '\n' : ']');
+                    }
+                    output.writeTo(outputStream);
+                }
+            } catch (IOException ioException) {
+                //client closed the connection, stop generating
+                LOGGER.debug("Stream aborted after {} of {} addresses: {}", written, count, ioException.getMessage());
+            } finally {
+                uniqueFilters.release(filter);
+                AddressDiagnostics.setTraceId(null);
+            }
+            metrics.recordStream(country, written, start, generationNanos, serializationNanos);
+        };
+        MediaType contentType = ndjson ? AddressController.APPLICATION_NDJSON : binaryType != null ? binaryType : MediaType.APPLICATION_JSON;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(contentType);
+        if (filter != null){
+            response.header(UniqueFilterFactory.FALSE_POSITIVE_RATE_HEADER, Double.toString(filter.getFalsePositiveRate()));
+        }
+        return response.body(body);
+    }
+}
@@ -1,10 +1,10 @@
 package jathompson.randomizer.restaddress;
 
 import jathompson.randomizer.restaddress.util.AddressData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.concurrent.ThreadLocalRandom;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.FieldBuilder;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.StateTable;
 
 /**
  * <p>
@@ -29,56 +29,105 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 public class AddressUSA extends Address{
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(AddressUSA.class);
-
     public AddressUSA(){
+        this(RandomSource.threadLocal());
+    }
+
+    /**
+     * Creates an address using the specified source of pseudo-random numbers.
+     *
+     * @param random source of pseudo-random numbers
+     */
+    public AddressUSA(RandomSource random){
+        this(random, AddressConstraints.NONE);
+    }
+
+    /**
+     * Creates an address using the specified source of pseudo-random numbers, with the requested field values.
+     *
+     * @param random source of pseudo-random numbers
+     * @param constraints requested state, city and postal code prefix
+     */
+    public AddressUSA(RandomSource random, AddressConstraints constraints){
         super();
-        createHouse();
-        createStreet();
-        createPostalCode();
-        createCity();
-        createCounty();
-        createStateAndCode();
-        createCountry();
+        CountryData data = AddressData.getCountryData(AddressData.USA);
+        dictionary = data.getDictionary();
+        createHouse(random);
+        createStreet(data, random);
+        createPostalCode(random);
+        postalCode = constraints.applyPostalPrefix(postalCode);
+        createCity(data, random, constraints);
+        createCounty(data, random);
+        createStateAndCode(data, random, constraints);
+        createCountry(data, random);
         countryCode = AddressData.USA;
-        LOGGER.debug("Generated address is: {}, {}, {}, {}, {}, {}, {}, {}", house,street, postalCode, city, county, state, stateCode, county);
+        AddressDiagnostics.generated(this);
     }
 
-    private void createStreet(){
-        street = AddressData.getRandomStreetEN();
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
+    private void createStreet(CountryData data, RandomSource random){
+        streetRef = data.getStreets(AddressData.EN).randomRef(random);
+        if (random.nextInt(100) < AddressConstants.INCLUDE_HOUSE_IN_STREET_PERCENT){
             prependHouseToStreet();
         }
     }
 
-    private void createPostalCode(){
-        postalCode = String.format("%05d", ThreadLocalRandom.current().nextInt(100000));
+    private void createPostalCode(RandomSource random){
+        postalCode = FieldBuilder.get().appendDigits(random.nextInt(100000), 5).toString();
     }
 
-    private void createCity(){
-        city = AddressData.getRandomCityEN();
+    private void createCity(CountryData data, RandomSource random, AddressConstraints constraints){
+        cityRef = constrainCity(data, constraints, AddressData.EN, data.getCities(AddressData.EN).randomRef(random));
     }
 
-    private void createCounty(){
-        county = AddressData.getRandomCountyEN();
+    private void createCounty(CountryData data, RandomSource random){
+        countyRef = data.getCounties(AddressData.EN).randomRef(random);
     }
 
-    private void createStateAndCode(){
-        int i = ThreadLocalRandom.current().nextInt(AddressData.statesUSA.size());
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_PERCENT) {
-            state = AddressData.statesUSA.get(i);
+    private void createStateAndCode(CountryData data, RandomSource random, AddressConstraints constraints){
+        StateTable states = data.getStates();
+        int i = constrainStateRow(data, constraints, states.randomRow(random), random);
+        if (random.nextInt(100) < AddressConstants.STATE_PERCENT) {
+            stateRef = states.nameRef(i);
         }
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.STATE_CODE_PERCENT){
-            stateCode = AddressData.stateCodesUSA.get(i);
+        if (random.nextInt(100) < AddressConstants.STATE_CODE_PERCENT){
+            stateCodeRef = states.codeRef(i);
         }
+        includeConstrainedState(states, i, constraints);
     }
 
-    private void createCountry(){
-        if (ThreadLocalRandom.current().nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
-            country = AddressData.countryUSA.get(ThreadLocalRandom.current().nextInt(AddressData.countryUSA.size()));
+    private void createCountry(CountryData data, RandomSource random){
+        if (random.nextInt(100) < AddressConstants.COUNTRY_PERCENT) {
+            countryRef = data.getCountryNames().randomRef(random);
         }
     }
 
-}
+    /**
+     * Registers <code>AddressUSA</code> with the <code>CountryRegistry</code>.
+     */
+    public static class Generator implements CountryAddressGenerator {
+        @Override
+        public String getCountryCode(){
+            return AddressData.USA;
+        }
 
+        @Override
+        public Address createAddress(RandomSource random){
+            return new AddressUSA(random);
+        }
+
+        @Override
+        public boolean supportsConstraints(){
+            return true;
+        }
+
+        @Override
+        public Address createAddress(RandomSource random, AddressConstraints constraints){
+            return new AddressUSA(random, constraints);
+        }
 
+        @Override
+        public String getPostalCodeFormat(){
+            return "99999";
+        }
+    }
+}
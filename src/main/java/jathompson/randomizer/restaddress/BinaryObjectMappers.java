@@ -0,0 +1,38 @@
+package jathompson.randomizer.restaddress;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Jackson mappers of the binary formats negotiated by <code>Accept: application/cbor</code> and
+ * <code>application/x-jackson-smile</code>. They are built from the application's
+ * <code>Jackson2ObjectMapperBuilder</code>, so the <code>spring.jackson</code> settings such as the omission of null
+ * fields apply to them as they do to JSON. They are not beans, which would replace the application's JSON mapper.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+public class BinaryObjectMappers {
+
+    private final ObjectMapper cbor;
+    private final ObjectMapper smile;
+
+    public BinaryObjectMappers(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        //the builder is a prototype, each call returns a new builder
+        cbor = builders.getObject().factory(new CBORFactory()).build();
+        smile = builders.getObject().factory(new SmileFactory()).build();
+    }
+
+    public ObjectMapper getCbor() {
+        return cbor;
+    }
+
+    public ObjectMapper getSmile() {
+        return smile;
+    }
+}
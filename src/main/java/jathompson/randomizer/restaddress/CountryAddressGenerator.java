@@ -0,0 +1,67 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.RandomSource;
+
+/**
+ * <p>
+ * Service provider interface for generating the addresses of one country.
+ * </p>
+ * <p>
+ * Implementations are discovered at startup with <code>java.util.ServiceLoader</code> and must be listed in
+ * <code>META-INF/services/jathompson.randomizer.restaddress.CountryAddressGenerator</code>. Adding a country only
+ * requires a new <code>Address</code> implementation and a generator registered in that file.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public interface CountryAddressGenerator {
+
+    /**
+     * Country handled by this generator.
+     *
+     * @return ISO 3166-1 alpha-3 code of the country
+     */
+    String getCountryCode();
+
+    /**
+     * Generates an address for this generator's country.
+     *
+     * @param random source of pseudo-random numbers
+     * @return pseudo-randomly generated address
+     */
+    Address createAddress(RandomSource random);
+
+    /**
+     * Whether this generator honours the state, city and postal code prefix of <code>AddressConstraints</code>.
+     * Constrained requests for a country whose generator does not are rejected before an address is generated.
+     *
+     * @return true if <code>createAddress(RandomSource, AddressConstraints)</code> applies the constraints
+     */
+    default boolean supportsConstraints() {
+        return false;
+    }
+
+    /**
+     * Generates an address for this generator's country with the requested field values. It is only called with
+     * constraints other than <code>AddressConstraints.NONE</code> when <code>supportsConstraints</code> is true, the
+     * default implementation ignores them.
+     *
+     * @param random source of pseudo-random numbers
+     * @param constraints requested state, city and postal code prefix
+     * @return pseudo-randomly generated address
+     */
+    default Address createAddress(RandomSource random, AddressConstraints constraints) {
+        return createAddress(random);
+    }
+
+    /**
+     * Format of the generated postal codes, used to validate a requested prefix.
+     *
+     * @return format with <code>9</code> for a digit and <code>A</code> for a letter, or null if prefixes are not
+     *         supported
+     */
+    default String getPostalCodeFormat() {
+        return null;
+    }
+}
@@ -0,0 +1,191 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.RandomSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * <p>
+ * Registry of the <code>CountryAddressGenerator</code> implementations available to this application.
+ * </p>
+ * <p>
+ * Generators are discovered once with <code>java.util.ServiceLoader</code> and indexed in a table addressed directly by
+ * the three letters of the ISO 3166-1 alpha-3 code, so a case-insensitive lookup is a single array access without
+ * allocating an upper case copy of the requested code.
+ * </p>
+ * <p>
+ * Deployments can restrict the served countries with <code>setEnabledCountries</code>, the enabled countries are
+ * swapped as one immutable snapshot.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class CountryRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CountryRegistry.class);
+
+    private static final int CODE_LENGTH = 3;
+    private static final int LETTERS = 26;
+
+    private static final List<CountryAddressGenerator> implemented;
+    private static volatile Countries enabled;
+
+    static {
+        List<CountryAddressGenerator> discovered = new ArrayList<>();
+        Set<String> codes = new HashSet<>();
+        for (CountryAddressGenerator generator : ServiceLoader.load(CountryAddressGenerator.class)) {
+            if (slot(generator.getCountryCode()) < 0) {
+                throw new IllegalStateException("Invalid ISO 3166-1 alpha-3 code " + generator.getCountryCode()
+                        + " for " + generator.getClass().getName());
+            }
+            if (!codes.add(generator.getCountryCode().toUpperCase(Locale.ROOT))) {
+                throw new IllegalStateException("More than one generator registered for " + generator.getCountryCode());
+            }
+            discovered.add(generator);
+        }
+        implemented = Collections.unmodifiableList(discovered);
+        enabled = new Countries(implemented);
+        LOGGER.info("Implemented countries are {}", enabled.countryCodes);
+    }
+
+    private CountryRegistry() {}
+
+    /**
+     * Restricts the countries served by this application. Disabled countries are not found by <code>lookup</code>
+     * and are not selected when no country is specified, so their data is never loaded.
+     *
+     * @param countryCodes ISO 3166-1 alpha-3 codes of the enabled countries in any case, empty to enable every implemented country
+     * @throws IllegalArgumentException if a country is not implemented
+     */
+    public static void setEnabledCountries(Collection<String> countryCodes) {
+        Set<String> requested = new HashSet<>();
+        for (String countryCode : countryCodes) {
+            if (!countryCode.isBlank()) {
+                requested.add(countryCode.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        if (requested.isEmpty()) {
+            enabled = new Countries(implemented);
+            LOGGER.info("Enabled countries are {}", enabled.countryCodes);
+            return;
+        }
+        List<CountryAddressGenerator> selected = new ArrayList<>();
+        for (CountryAddressGenerator generator : implemented) {
+            if (requested.remove(generator.getCountryCode().toUpperCase(Locale.ROOT))) {
+                selected.add(generator);
+            }
+        }
+        if (!requested.isEmpty()) {
+            throw new IllegalArgumentException("Countries " + requested + " are not implemented, implemented countries are "
+                    + getImplementedCountryCodes());
+        }
+        enabled = new Countries(selected);
+        LOGGER.info("Enabled countries are {}", enabled.countryCodes);
+    }
+
+    /**
+     * Finds the generator for an enabled country, ignoring case.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code in any case
+     * @return generator for the country or <code>null</code> if the country is not implemented or not enabled
+     */
+    public static CountryAddressGenerator lookup(String countryCode) {
+        int slot = slot(countryCode);
+        return slot < 0 ? null : enabled.generatorsByCode[slot];
+    }
+
+    /**
+     * Pseudo-randomly selects an enabled country.
+     *
+     * @param random source of pseudo-random numbers
+     * @return generator of the selected country
+     */
+    public static CountryAddressGenerator random(RandomSource random) {
+        CountryAddressGenerator[] generators = enabled.generators;
+        return generators[random.nextInt(generators.length)];
+    }
+
+    /**
+     * Returns the enabled generator at a position of the discovery order.
+     *
+     * @param index value between 0 (inclusive) and <code>size()</code> (exclusive)
+     * @return generator at the index
+     */
+    public static CountryAddressGenerator get(int index) {
+        return enabled.generators[index];
+    }
+
+    /**
+     * Number of enabled countries.
+     *
+     * @return number of enabled countries
+     */
+    public static int size() {
+        return enabled.generators.length;
+    }
+
+    /**
+     * Countries enabled in this application.
+     *
+     * @return ISO 3166-1 alpha-3 codes of the enabled countries in discovery order
+     */
+    public static List<String> getCountryCodes() {
+        return enabled.countryCodes;
+    }
+
+    /**
+     * Countries implemented by this application, whether enabled or not.
+     *
+     * @return ISO 3166-1 alpha-3 codes of the implemented countries in discovery order
+     */
+    public static List<String> getImplementedCountryCodes() {
+        List<String> codes = new ArrayList<>();
+        for (CountryAddressGenerator generator : implemented) {
+            codes.add(generator.getCountryCode());
+        }
+        return codes;
+    }
+
+    //immutable set of enabled generators, replaced as a whole so lookups never see a partial update
+    private static final class Countries {
+        private final CountryAddressGenerator[] generatorsByCode = new CountryAddressGenerator[LETTERS * LETTERS * LETTERS];
+        private final CountryAddressGenerator[] generators;
+        private final List<String> countryCodes;
+
+        private Countries(List<CountryAddressGenerator> generators) {
+            List<String> codes = new ArrayList<>();
+            for (CountryAddressGenerator generator : generators) {
+                generatorsByCode[slot(generator.getCountryCode())] = generator;
+                codes.add(generator.getCountryCode());
+            }
+            this.generators = generators.toArray(new CountryAddressGenerator[0]);
+            this.countryCodes = Collections.unmodifiableList(codes);
+        }
+    }
+
+    //maps the three ASCII letters of a code to 0..26^3-1, or -1 for anything that is not a three letter code
+    private static int slot(String countryCode) {
+        if (countryCode == null || countryCode.length() != CODE_LENGTH) {
+            return -1;
+        }
+        int slot = 0;
+        for (int i = 0; i < CODE_LENGTH; i++) {
+            //setting bit 0x20 lower cases ASCII letters, anything else lands outside 'a'-'z'
+            int c = countryCode.charAt(i) | 0x20;
+            if (c < 'a' || c > 'z') {
+                return -1;
+            }
+            slot = slot * LETTERS + (c - 'a');
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,91 @@
+package jathompson.randomizer.restaddress;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jathompson.randomizer.restaddress.util.AddressData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Administrative REST calls for the address data, enabled with
+ * <code>randomizer.dataset.reload-endpoint.enabled=true</code>.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@RestController
+@ConditionalOnProperty(name = "randomizer.dataset.reload-endpoint.enabled", havingValue = "true")
+public class DatasetController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetController.class);
+
+    /**
+     * Reloads the data of a country, or of every enabled country which has been loaded, from the current files and
+     * publishes it as a new snapshot. A country which fails to reload keeps its previous data. When every country is
+     * reloaded, each one is reloaded independently and the response is <code>207</code> if some of them failed.
+     *
+     * @param country Country to reload
+     * @return result per reloaded country
+     * @throws org.springframework.web.server.ResponseStatusException if the country is invalid or the requested country cannot be loaded
+     */
+    @PostMapping("/randomizer/datasets/reload")
+    public ResponseEntity<Map<String, Reload>> reloadDatasets(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country) {
+        Map<String, Reload> reloaded = new LinkedHashMap<>();
+        if (AddressData.DEFAULT.equalsIgnoreCase(country)) {
+            boolean failed = false;
+            for (String countryCode : CountryRegistry.getCountryCodes()) {
+                if (AddressData.isLoaded(countryCode)) {
+                    try {
+                        reloaded.put(countryCode, new Reload(AddressData.reload(countryCode).getDictionary().size(), null));
+                    } catch (RuntimeException exception) {
+                        LOGGER.error("Reloading {} failed, the previous data stays in use", countryCode, exception);
+                        reloaded.put(countryCode, new Reload(null, exception.getMessage()));
+                        failed = true;
+                    }
+                }
+            }
+            LOGGER.info("Reloaded {}", reloaded.keySet());
+            return ResponseEntity.status(failed ? HttpStatus.MULTI_STATUS : HttpStatus.OK).body(reloaded);
+        } else {
+            CountryAddressGenerator generator = CountryRegistry.lookup(country);
+            if (generator == null) {
+                LOGGER.error("Country {} is not supported by this REST call", country);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Country is not supported");
+            }
+            reloaded.put(generator.getCountryCode(), new Reload(AddressData.reload(generator.getCountryCode()).getDictionary().size(), null));
+        }
+        LOGGER.info("Reloaded {}", reloaded.keySet());
+        return ResponseEntity.ok(reloaded);
+    }
+
+    /**
+     * Result of reloading a country: the number of values loaded, or the error which kept the previous data in use.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Reload {
+        private final Integer values;
+        private final String error;
+
+        Reload(Integer values, String error) {
+            this.values = values;
+            this.error = error;
+        }
+
+        public Integer getValues() {
+            return values;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Data settings of the application. <code>randomizer.countries</code> restricts the served countries to a comma
+ * separated list, every implemented country is served when it is empty. When <code>randomizer.dataset.dir</code> is
+ * set, the binary datasets compiled by <code>DatasetCompiler</code> are memory-mapped instead of loading the text
+ * files from the classpath. <code>randomizer.data.weighted=true</code> samples the data files with weights, such as
+ * the state populations, in proportion to them.
+ * </p>
+ * <p>
+ * The settings are applied to <code>CountryRegistry</code> and <code>AddressData</code> when this bean is created.
+ * Beans which generate addresses or read the data, directly or on their own threads, take this bean as a constructor
+ * argument so they are only created once the settings apply.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+public class DatasetSettings {
+
+    private final List<String> enabledCountries;
+    private final String datasetDirectory;
+    private final boolean weighted;
+
+    public DatasetSettings(@Value("${randomizer.countries:}") List<String> countries,
+                           @Value("${" + AddressData.DATASET_DIR_PROPERTY + ":}") String datasetDirectory,
+                           @Value("${" + AddressData.WEIGHTED_PROPERTY + ":false}") boolean weighted) {
+        CountryRegistry.setEnabledCountries(countries);
+        AddressData.configure(datasetDirectory.isEmpty() ? null : datasetDirectory, weighted);
+        this.enabledCountries = CountryRegistry.getCountryCodes();
+        this.datasetDirectory = datasetDirectory.isEmpty() ? null : datasetDirectory;
+        this.weighted = weighted;
+    }
+
+    /**
+     * Countries served by this application.
+     *
+     * @return ISO 3166-1 alpha-3 codes of the enabled countries in discovery order
+     */
+    public List<String> getEnabledCountries() {
+        return enabledCountries;
+    }
+
+    /**
+     * Directory of binary datasets and text files replacing the ones on the classpath.
+     *
+     * @return path of the directory, or <code>null</code> if the data is only loaded from the classpath
+     */
+    public String getDatasetDirectory() {
+        return datasetDirectory;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+}
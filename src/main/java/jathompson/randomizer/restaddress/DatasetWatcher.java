@@ -0,0 +1,112 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Watches <code>randomizer.dataset.dir</code> when <code>randomizer.dataset.watch=true</code> and reloads the countries
+ * using a file which was created, modified or deleted. Reloading runs on the watcher thread and publishes each country
+ * as a new snapshot, requests keep using the previous snapshot until then. A country which fails to reload keeps its
+ * previous snapshot and the directory is still watched.
+ * </p>
+ * <p>
+ * Changes are collected until the directory has been quiet for <code>QUIET_PERIOD_MILLIS</code>, so a dataset copied
+ * file by file is reloaded once. Binary datasets should be replaced by moving a complete file into the directory,
+ * since a mapped file which is overwritten in place changes under the snapshot using it.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+@ConditionalOnProperty(name = "randomizer.dataset.watch", havingValue = "true")
+public class DatasetWatcher implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetWatcher.class);
+
+    /**
+     * Time without changes after which the changed countries are reloaded.
+     */
+    public static final long QUIET_PERIOD_MILLIS = 2000;
+
+    private final Path directory;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public DatasetWatcher(DatasetSettings settings) throws IOException {
+        String directory = settings.getDatasetDirectory();
+        if (directory == null) {
+            throw new IllegalStateException("randomizer.dataset.watch requires " + AddressData.DATASET_DIR_PROPERTY);
+        }
+        this.directory = Path.of(directory);
+        watchService = this.directory.getFileSystem().newWatchService();
+        this.directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        thread = new Thread(this::watch, "dataset-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info("Watching {} for dataset changes", this.directory);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> countryCodes = new LinkedHashSet<>();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            countryCodes.addAll(AddressData.getCountryCodes());
+                        } else {
+                            countryCodes.addAll(AddressData.getCountryCodesUsingFile(event.context().toString()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        LOGGER.error("{} can no longer be watched, datasets will not be reloaded", directory);
+                        return;
+                    }
+                    key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                reload(countryCodes);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException stopped) {
+            LOGGER.debug("Stopped watching {}", directory);
+        }
+    }
+
+    //countries which were never requested load the current files on first use
+    private void reload(Set<String> countryCodes) {
+        for (String countryCode : countryCodes) {
+            if (AddressData.isLoaded(countryCode)) {
+                try {
+                    AddressData.reload(countryCode);
+                } catch (RuntimeException exception) {
+                    //a half-written file fails this reload only, the next change of the file reloads the country again
+                    LOGGER.error("Reloading {} failed, the previous data stays in use", countryCode, exception);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
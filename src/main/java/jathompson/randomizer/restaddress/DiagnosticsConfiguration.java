@@ -0,0 +1,106 @@
+package jathompson.randomizer.restaddress;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * <p>
+ * Applies the <code>AddressDiagnostics</code> settings and, when the trace header is enabled, marks the requests
+ * carrying <code>X-Randomizer-Trace</code> as traced and returns their trace id in the same header.
+ * </p>
+ * <p>
+ * On the servlet stack an interceptor sets the trace id on the worker thread. On the reactive stack a web filter sets
+ * it on the event loop thread while the request is subscribed, which is when a handler returning a value is invoked.
+ * Generation moved to other threads from there, the bulk requests and the reactive stream, carries it over itself.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Configuration
+public class DiagnosticsConfiguration implements WebMvcConfigurer {
+
+    private static final String TRACE_HEADER_PROPERTY = "randomizer.diagnostics.trace-header.enabled";
+
+    public DiagnosticsConfiguration(@Value("${randomizer.diagnostics.sample-rate:1000}") int sampleRate,
+                                    @Value("${" + TRACE_HEADER_PROPERTY + ":false}") boolean traceHeader) {
+        AddressDiagnostics.configure(sampleRate, traceHeader);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (AddressDiagnostics.isTraceHeaderEnabled()) {
+            registry.addInterceptor(new TraceInterceptor()).addPathPatterns("/randomizer/**");
+        }
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    @ConditionalOnProperty(name = TRACE_HEADER_PROPERTY, havingValue = "true")
+    public WebFilter traceWebFilter() {
+        return new TraceWebFilter();
+    }
+
+    private static class TraceInterceptor implements AsyncHandlerInterceptor {
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            String traceId = AddressDiagnostics.traceId(request.getHeader(AddressDiagnostics.TRACE_HEADER));
+            if (traceId != null) {
+                response.setHeader(AddressDiagnostics.TRACE_HEADER, traceId);
+            }
+            AddressDiagnostics.setTraceId(traceId);
+            return true;
+        }
+
+        @Override
+        public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            AddressDiagnostics.setTraceId(null);
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception) {
+            AddressDiagnostics.setTraceId(null);
+        }
+    }
+
+    private static class TraceWebFilter implements WebFilter {
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+            if (!exchange.getRequest().getPath().value().startsWith("/randomizer/")) {
+                return chain.filter(exchange);
+            }
+            String traceId = AddressDiagnostics.traceId(exchange.getRequest().getHeaders().getFirst(AddressDiagnostics.TRACE_HEADER));
+            if (traceId == null) {
+                return chain.filter(exchange);
+            }
+            exchange.getResponse().getHeaders().set(AddressDiagnostics.TRACE_HEADER, traceId);
+            //the event loop serves other requests once the subscription returns, so the trace id only lasts as long
+            return new MonoOperator<>(chain.filter(exchange)) {
+                @Override
+                public void subscribe(CoreSubscriber<? super Void> actual) {
+                    AddressDiagnostics.setTraceId(traceId);
+                    try {
+                        source.subscribe(actual);
+                    } finally {
+                        AddressDiagnostics.setTraceId(null);
+                    }
+                }
+            };
+        }
+    }
+}
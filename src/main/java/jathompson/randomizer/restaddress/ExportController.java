@@ -0,0 +1,130 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * REST calls of the export jobs, which write large seeded runs of addresses to partitioned files instead of a
+ * response. Enabled with <code>randomizer.export.enabled=true</code>, see <code>ExportJobService</code>.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@RestController
+@ConditionalOnProperty(name = "randomizer.export.enabled", havingValue = "true")
+public class ExportController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType APPLICATION_GZIP = MediaType.parseMediaType("application/gzip");
+    private static final MediaType APPLICATION_ZSTD = MediaType.parseMediaType("application/zstd");
+    private static final MediaType APPLICATION_ARROW_FILE = MediaType.parseMediaType("application/vnd.apache.arrow.file");
+
+    private final ExportJobService exports;
+    private final AddressRequestValidator validator;
+
+    public ExportController(ExportJobService exports, AddressRequestValidator validator) {
+        this.exports = exports;
+        this.validator = validator;
+    }
+
+    /**
+     * Submits an export job. The addresses are the same as those of <code>/randomizer/addresses</code> with the
+     * job's seed, offset 0 and count.
+     *
+     * @param country Type of address to generate
+     * @param count Number of addresses to export, limited to <code>randomizer.export.max-count</code>
+     * @param seed Optional seed of the run, a random seed is chosen and reported otherwise
+     * @param format <code>csv</code>, <code>ndjson</code> or <code>arrow</code>
+     * @param compression <code>gzip</code>, <code>zstd</code> or <code>none</code>, gzip for text files and zstd for
+     *                    Arrow files by default
+     * @return status of the queued job, with the location of the job
+     * @throws org.springframework.web.server.ResponseStatusException if a parameter is invalid or the export queue is full
+     */
+    @PostMapping("/randomizer/exports")
+    public ResponseEntity<ExportJob> submitExport(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country,
+                                                  @RequestParam(value = "count") long count,
+                                                  @RequestParam(value = "seed", required = false) Long seed,
+                                                  @RequestParam(value = "format", defaultValue = "csv") String format,
+                                                  @RequestParam(value = "compression", required = false) String compression) {
+        validator.validateCountry(country);
+        ExportJob job = exports.submit(country, count, seed, format, compression);
+        return ResponseEntity.accepted().location(URI.create("/randomizer/exports/" + job.getId())).body(job);
+    }
+
+    @GetMapping("/randomizer/exports")
+    public Collection<ExportJob> getExports() {
+        return exports.getJobs();
+    }
+
+    /**
+     * Status of a job: its state, the partitions completed, the addresses written and the throughput.
+     *
+     * @param id Id of the job
+     * @return status of the job
+     */
+    @GetMapping("/randomizer/exports/{id}")
+    public ExportJob getExport(@PathVariable("id") String id) {
+        return exports.get(id);
+    }
+
+    /**
+     * Cancels a job. Queued partitions are not written, running partitions stop and the completed ones are kept.
+     *
+     * @param id Id of the job
+     * @return status of the job
+     */
+    @DeleteMapping("/randomizer/exports/{id}")
+    public ExportJob cancelExport(@PathVariable("id") String id) {
+        return exports.cancel(id);
+    }
+
+    /**
+     * Restarts a cancelled, failed or interrupted job: every partition which is not completed is written again,
+     * and the completed partitions too from the specified partition on.
+     *
+     * @param id Id of the job
+     * @param from Optional first completed partition to write again
+     * @return status of the queued job
+     */
+    @PostMapping("/randomizer/exports/{id}/restart")
+    public ExportJob restartExport(@PathVariable("id") String id,
+                                   @RequestParam(value = "from", required = false) Integer from) {
+        return exports.restart(id, from);
+    }
+
+    /**
+     * Downloads the file of a completed partition.
+     *
+     * @param id Id of the job
+     * @param partition Partition of the job
+     * @return partition file
+     */
+    @GetMapping("/randomizer/exports/{id}/partitions/{partition}")
+    public ResponseEntity<Resource> downloadPartition(@PathVariable("id") String id, @PathVariable("partition") int partition) {
+        Path file = exports.getPartitionFile(id, partition);
+        ExportJob job = exports.get(id);
+        MediaType contentType = job.getFormat().isColumnar() ? APPLICATION_ARROW_FILE
+                : job.getCompression() == ExportJob.Compression.GZIP ? APPLICATION_GZIP
+                : job.getCompression() == ExportJob.Compression.ZSTD ? APPLICATION_ZSTD
+                : job.getFormat() == ExportJob.Format.CSV ? TEXT_CSV : AddressController.APPLICATION_NDJSON;
+        return ResponseEntity.ok().contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                .body(new FileSystemResource(file));
+    }
+}
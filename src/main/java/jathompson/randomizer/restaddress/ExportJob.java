@@ -0,0 +1,416 @@
+package jathompson.randomizer.restaddress;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Export of a seeded run of addresses to files, split into partitions of consecutive indexes which are written
+ * independently by <code>ExportJobService</code>. Partition <code>p</code> holds the addresses at indexes
+ * <code>p * partitionSize</code> to <code>(p + 1) * partitionSize - 1</code> of the run, the same addresses as the
+ * bulk and streaming endpoints with that seed and offset, so a partition can be written again at any time.
+ * </p>
+ * <p>
+ * The job's settings are kept in <code>job.properties</code> in its directory, so the jobs and their completed
+ * partitions are found again after a restart. Serialized as the job status returned by <code>ExportController</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class ExportJob {
+
+    static final String MANIFEST = "job.properties";
+
+    /**
+     * File format of the partitions.
+     */
+    public enum Format {
+        CSV("csv"), NDJSON("ndjson"), ARROW("arrow");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        static Format parse(String format) {
+            for (Format value : values()) {
+                if (value.extension.equalsIgnoreCase(format)) {
+                    return value;
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Format must be csv, ndjson or arrow");
+        }
+
+        /**
+         * Whether the partitions are columnar files, whose compression applies to the buffers inside the file.
+         *
+         * @return true for Arrow IPC files
+         */
+        boolean isColumnar() {
+            return this == ARROW;
+        }
+    }
+
+    /**
+     * Compression of the partition files. Text files are compressed as a whole, Arrow files compress the buffers
+     * of each record batch and only support zstd.
+     */
+    public enum Compression {
+        NONE(""), GZIP(".gz"), ZSTD(".zst");
+
+        private final String extension;
+
+        Compression(String extension) {
+            this.extension = extension;
+        }
+
+        static Compression parse(String compression, Format format) {
+            if (compression == null) {
+                return format.isColumnar() ? ZSTD : GZIP;
+            }
+            for (Compression value : values()) {
+                if (value.name().equalsIgnoreCase(compression)) {
+                    if (format.isColumnar() && value == GZIP) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Compression of arrow files must be none or zstd");
+                    }
+                    return value;
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Compression must be none, gzip or zstd");
+        }
+
+        OutputStream wrap(OutputStream stream, int bufferSize) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPOutputStream(stream, bufferSize);
+                case ZSTD:
+                    return new ZstdOutputStream(stream);
+                default:
+                    return stream;
+            }
+        }
+    }
+
+    /**
+     * State of a partition, and of the job: a job is running while a partition is queued or running, and otherwise
+     * completed once every partition is, failed if a partition failed and cancelled if a partition was cancelled.
+     */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    private final String id;
+    private final Path directory;
+    private final String country;
+    private final long count;
+    private final long seed;
+    private final Format format;
+    private final Compression compression;
+    private final int partitionSize;
+    //guarded by this
+    private final Status[] partitions;
+    //addresses written to each partition so far
+    private final AtomicLongArray partitionWritten;
+    private volatile boolean cancelled;
+    //guarded by this
+    private String error;
+    private long startNanos;
+    private long endNanos;
+    //addresses of the partitions kept when the job was last started
+    private long startWritten;
+
+    ExportJob(String id, Path directory, String country, long count, long seed, Format format, Compression compression, int partitionSize) {
+        this.id = id;
+        this.directory = directory;
+        this.country = country;
+        this.count = count;
+        this.seed = seed;
+        this.format = format;
+        this.compression = compression;
+        this.partitionSize = partitionSize;
+        int partitionCount = (int) ((count + partitionSize - 1) / partitionSize);
+        partitions = new Status[partitionCount];
+        Arrays.fill(partitions, Status.CANCELLED);
+        partitionWritten = new AtomicLongArray(partitionCount);
+    }
+
+    /**
+     * Loads a job from its directory. Partitions whose file exists are completed, the others were interrupted and
+     * are cancelled until the job is restarted.
+     *
+     * @param directory directory of the job
+     * @return job described by the directory's manifest
+     * @throws IOException if the manifest cannot be read
+     * @throws IllegalArgumentException if the manifest is invalid
+     */
+    static ExportJob load(Path directory) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream input = Files.newInputStream(directory.resolve(MANIFEST))) {
+            manifest.load(input);
+        }
+        ExportJob job = new ExportJob(directory.getFileName().toString(), directory, manifest.getProperty("country"),
+                Long.parseLong(manifest.getProperty("count")), Long.parseLong(manifest.getProperty("seed")),
+                Format.valueOf(manifest.getProperty("format")), Compression.valueOf(manifest.getProperty("compression")),
+                Integer.parseInt(manifest.getProperty("partitionSize")));
+        for (int partition = 0; partition < job.partitions.length; partition++) {
+            if (Files.exists(job.partitionFile(partition))) {
+                job.partitions[partition] = Status.COMPLETED;
+                job.partitionWritten.set(partition, job.partitionLength(partition));
+            }
+            Files.deleteIfExists(job.temporaryFile(partition));
+        }
+        return job;
+    }
+
+    void save() throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("country", country);
+        manifest.setProperty("count", Long.toString(count));
+        manifest.setProperty("seed", Long.toString(seed));
+        manifest.setProperty("format", format.name());
+        manifest.setProperty("compression", compression.name());
+        manifest.setProperty("partitionSize", Integer.toString(partitionSize));
+        Files.createDirectories(directory);
+        try (OutputStream output = Files.newOutputStream(directory.resolve(MANIFEST))) {
+            manifest.store(output, "Address export " + id);
+        }
+    }
+
+    //removes a job which was never queued, so it is not loaded again at startup
+    void delete() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    public int getPartitions() {
+        return partitions.length;
+    }
+
+    public synchronized Status getStatus() {
+        boolean started = false;
+        boolean active = false;
+        boolean failed = false;
+        boolean completed = true;
+        for (Status partition : partitions) {
+            started |= partition == Status.RUNNING;
+            active |= partition == Status.QUEUED || partition == Status.RUNNING;
+            failed |= partition == Status.FAILED;
+            completed &= partition == Status.COMPLETED;
+        }
+        if (active) {
+            return started ? Status.RUNNING : Status.QUEUED;
+        }
+        return completed ? Status.COMPLETED : failed ? Status.FAILED : Status.CANCELLED;
+    }
+
+    public synchronized int getCompletedPartitions() {
+        int completed = 0;
+        for (Status partition : partitions) {
+            if (partition == Status.COMPLETED) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Addresses written by the partitions completed or in progress.
+     *
+     * @return number of addresses written
+     */
+    public long getWritten() {
+        long written = 0;
+        for (int partition = 0; partition < partitions.length; partition++) {
+            written += partitionWritten.get(partition);
+        }
+        return written;
+    }
+
+    /**
+     * Fraction of the job's addresses written.
+     *
+     * @return progress between 0 and 1
+     */
+    public double getProgress() {
+        return (double) getWritten() / count;
+    }
+
+    /**
+     * Throughput of the partitions written since the job was submitted or last restarted, up to its end.
+     *
+     * @return addresses written per second
+     */
+    public synchronized long getAddressesPerSecond() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long elapsed = (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+        return elapsed <= 0 ? 0 : (long) ((getWritten() - startWritten) * 1e9 / elapsed);
+    }
+
+    /**
+     * Names of the files of the completed partitions, <code>null</code> for the partitions not completed.
+     *
+     * @return file name by partition
+     */
+    public synchronized List<String> getFiles() {
+        List<String> files = new ArrayList<>(partitions.length);
+        for (int partition = 0; partition < partitions.length; partition++) {
+            files.add(partitions[partition] == Status.COMPLETED ? partitionFile(partition).getFileName().toString() : null);
+        }
+        return files;
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    synchronized boolean isCompleted(int partition) {
+        return partitions[partition] == Status.COMPLETED;
+    }
+
+    /**
+     * Queues the partitions not completed and, from the specified partition on, the completed partitions.
+     *
+     * @param from first completed partition to write again, <code>getPartitions()</code> to keep every completed partition
+     * @return queued partitions
+     */
+    synchronized List<Integer> queue(int from) {
+        List<Integer> queued = new ArrayList<>();
+        for (int partition = 0; partition < partitions.length; partition++) {
+            if (partitions[partition] != Status.COMPLETED || partition >= from) {
+                partitions[partition] = Status.QUEUED;
+                partitionWritten.set(partition, 0);
+                queued.add(partition);
+            }
+        }
+        cancelled = false;
+        error = null;
+        startWritten = getWritten();
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        return queued;
+    }
+
+    /**
+     * Marks a queued partition as running.
+     *
+     * @param partition partition taken by a worker
+     * @return false if the partition is no longer queued, because the job was cancelled or it is already written
+     */
+    synchronized boolean start(int partition) {
+        if (partitions[partition] != Status.QUEUED) {
+            return false;
+        }
+        partitions[partition] = Status.RUNNING;
+        return true;
+    }
+
+    void written(int partition, long written) {
+        partitionWritten.set(partition, written);
+    }
+
+    /**
+     * Ends a running or queued partition.
+     *
+     * @param partition partition ended
+     * @param status <code>COMPLETED</code>, <code>FAILED</code> or <code>CANCELLED</code>
+     * @param failure cause of a failure
+     * @return true if it was the job's last active partition
+     */
+    synchronized boolean end(int partition, Status status, String failure) {
+        partitions[partition] = status;
+        if (status != Status.COMPLETED) {
+            partitionWritten.set(partition, 0);
+        }
+        if (failure != null && error == null) {
+            error = "Partition " + partition + ": " + failure;
+        }
+        for (Status other : partitions) {
+            if (other == Status.QUEUED || other == Status.RUNNING) {
+                return false;
+            }
+        }
+        endNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Cancels the queued partitions and stops the running partitions at their next write. Completed partitions
+     * are kept.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        for (int partition = 0; partition < partitions.length; partition++) {
+            if (partitions[partition] == Status.QUEUED) {
+                end(partition, Status.CANCELLED, null);
+            }
+        }
+    }
+
+    long partitionStart(int partition) {
+        return (long) partition * partitionSize;
+    }
+
+    int partitionLength(int partition) {
+        return (int) Math.min(partitionSize, count - partitionStart(partition));
+    }
+
+    Path partitionFile(int partition) {
+        return directory.resolve(String.format(Locale.ROOT, "part-%05d.%s%s", partition, format.extension,
+                format.isColumnar() ? "" : compression.extension));
+    }
+
+    Path temporaryFile(int partition) {
+        Path file = partitionFile(partition);
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+}
@@ -0,0 +1,360 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Runs the <code>ExportJob</code>s submitted to <code>ExportController</code>, enabled with
+ * <code>randomizer.export.enabled=true</code>.
+ * </p>
+ * <p>
+ * Each partition of a job is a task of a worker pool of <code>randomizer.export.workers</code> threads, one per core
+ * by default, whose queue holds up to <code>randomizer.export.queue-capacity</code> partitions; a job which does not
+ * fit in the queue is rejected. Since a job queues all its partitions at once, <code>randomizer.export.max-count</code>
+ * defaults to the queue capacity times <code>randomizer.export.partition-size</code> and may not exceed it.
+ * </p>
+ * <p>
+ * A worker generates its partition in blocks of <code>BATCH_SIZE</code> addresses into a reused
+ * <code>AddressBatch</code> and writes each block to a temporary file of a <code>FileChannel</code>: CSV and NDJSON
+ * through a <code>JsonOutput</code> buffer of 64 KB, compressed with gzip or zstd when requested, and Arrow as one
+ * record batch of an <code>AddressArrowWriter</code>. The file is renamed once the partition is complete, so a
+ * partition file is never partial. Jobs are kept in <code>randomizer.export.dir</code> and loaded again at startup;
+ * their interrupted partitions are written by restarting the job.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+@ConditionalOnProperty(name = "randomizer.export.enabled", havingValue = "true")
+public class ExportJobService implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportJobService.class);
+
+    //bytes buffered before each write to the channel or compressor
+    static final int WRITE_BUFFER = 1 << 16;
+    //addresses generated before they are written, cancellation is checked after each block
+    static final int BATCH_SIZE = 4096;
+
+    private final Path directory;
+    private final int partitionSize;
+    private final int queueCapacity;
+    private final long maxCount;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final AddressMetrics metrics;
+
+    public ExportJobService(@Value("${randomizer.export.dir:export}") String directory,
+                            @Value("${randomizer.export.workers:0}") int workerCount,
+                            @Value("${randomizer.export.queue-capacity:1024}") int queueCapacity,
+                            @Value("${randomizer.export.partition-size:1000000}") int partitionSize,
+                            @Value("${randomizer.export.max-count:0}") long maxCount,
+                            AddressMetrics metrics) throws IOException {
+        if (partitionSize < 1) {
+            throw new IllegalArgumentException("Partition size " + partitionSize + " must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity " + queueCapacity + " must be at least 1");
+        }
+        //a job queues all its partitions at once, so a larger job could never be accepted
+        long queuedCount = (long) queueCapacity * partitionSize;
+        if (maxCount > queuedCount) {
+            throw new IllegalArgumentException("Max count " + maxCount + " exceeds the " + queuedCount + " addresses of "
+                    + queueCapacity + " queued partitions of " + partitionSize + ", raise the queue capacity or partition size");
+        }
+        this.directory = Path.of(directory);
+        this.partitionSize = partitionSize;
+        this.queueCapacity = queueCapacity;
+        this.maxCount = maxCount > 0 ? maxCount : queuedCount;
+        this.metrics = metrics;
+        int threads = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread worker = new Thread(task, "address-export-" + threadCount.getAndIncrement());
+            worker.setDaemon(true);
+            return worker;
+        });
+        Files.createDirectories(this.directory);
+        try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(this.directory, Files::isDirectory)) {
+            for (Path jobDirectory : jobDirectories) {
+                if (Files.exists(jobDirectory.resolve(ExportJob.MANIFEST))) {
+                    try {
+                        ExportJob job = ExportJob.load(jobDirectory);
+                        jobs.put(job.getId(), job);
+                    } catch (IOException | IllegalArgumentException exception) {
+                        LOGGER.error("Export job {} cannot be loaded", jobDirectory, exception);
+                    }
+                }
+            }
+        }
+        LOGGER.info("Exporting to {} with {} workers, {} jobs found", this.directory.toAbsolutePath(), threads, jobs.size());
+    }
+
+    /**
+     * Creates a job and queues all its partitions.
+     *
+     * @param country country of the addresses, or <code>AddressData.DEFAULT</code>
+     * @param count number of addresses
+     * @param seed seed of the run, or null for a random seed
+     * @param format file format, <code>csv</code>, <code>ndjson</code> or <code>arrow</code>
+     * @param compression <code>gzip</code>, <code>zstd</code> or <code>none</code>, null for gzip text files and zstd
+     *                    Arrow files
+     * @return queued job
+     * @throws ResponseStatusException if a parameter is invalid or the worker queue is full
+     */
+    public ExportJob submit(String country, long count, Long seed, String format, String compression) {
+        if (count < 1 || count > maxCount) {
+            LOGGER.error("Count {} is outside the supported range 1-{}", count, maxCount);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Count must be between 1 and " + maxCount + ", at most "
+                    + queueCapacity + " partitions of " + partitionSize + " addresses are queued");
+        }
+        ExportJob.Format fileFormat = ExportJob.Format.parse(format);
+        ExportJob.Compression fileCompression = ExportJob.Compression.parse(compression, fileFormat);
+        String id = UUID.randomUUID().toString();
+        ExportJob job = new ExportJob(id, directory.resolve(id), country, count,
+                seed != null ? seed : ThreadLocalRandom.current().nextLong(), fileFormat, fileCompression, partitionSize);
+        //checked and queued under the lock of schedule, so no other job takes the capacity in between
+        synchronized (workers) {
+            if (job.getPartitions() > workers.getQueue().remainingCapacity()) {
+                throw queueFull(job.getPartitions());
+            }
+            try {
+                job.save();
+            } catch (IOException exception) {
+                LOGGER.error("Export job {} cannot be created in {}", id, directory, exception);
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Export job cannot be created", exception);
+            }
+            jobs.put(id, job);
+            try {
+                schedule(job, job.getPartitions());
+            } catch (ResponseStatusException exception) {
+                //only rejected once the workers are shut down, the job is forgotten rather than kept cancelled
+                jobs.remove(id);
+                try {
+                    job.delete();
+                } catch (IOException deleteException) {
+                    LOGGER.warn("Export job directory {} cannot be deleted: {}", directory.resolve(id), deleteException.getMessage());
+                }
+                throw exception;
+            }
+        }
+        LOGGER.info("Export {} queued: {} {} addresses in {} partitions", id, count, country, job.getPartitions());
+        return job;
+    }
+
+    /**
+     * Job of an id.
+     *
+     * @param id id of the job
+     * @return job
+     * @throws ResponseStatusException if there is no such job
+     */
+    public ExportJob get(String id) {
+        ExportJob job = jobs.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Export job does not exist");
+        }
+        return job;
+    }
+
+    public Collection<ExportJob> getJobs() {
+        return jobs.values();
+    }
+
+    /**
+     * Cancels a job, its completed partitions are kept.
+     *
+     * @param id id of the job
+     * @return cancelled job, running until its running partitions stop
+     */
+    public ExportJob cancel(String id) {
+        ExportJob job = get(id);
+        job.cancel();
+        LOGGER.info("Export {} cancelled", id);
+        return job;
+    }
+
+    /**
+     * Writes the partitions of a job which are not completed, and the completed partitions from the specified one on.
+     *
+     * @param id id of the job
+     * @param from first completed partition to write again, null to keep the completed partitions
+     * @return queued job
+     * @throws ResponseStatusException if the job is still running or the worker queue is full
+     */
+    public ExportJob restart(String id, Integer from) {
+        ExportJob job = get(id);
+        ExportJob.Status status = job.getStatus();
+        if (status == ExportJob.Status.QUEUED || status == ExportJob.Status.RUNNING) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Export job is still running");
+        }
+        if (from != null && (from < 0 || from >= job.getPartitions())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Partition must be between 0 and " + (job.getPartitions() - 1));
+        }
+        schedule(job, from != null ? from : job.getPartitions());
+        LOGGER.info("Export {} restarted", id);
+        return job;
+    }
+
+    /**
+     * File of a completed partition.
+     *
+     * @param id id of the job
+     * @param partition partition of the job
+     * @return path of the partition file
+     * @throws ResponseStatusException if the job or partition does not exist or the partition is not completed
+     */
+    public Path getPartitionFile(String id, int partition) {
+        ExportJob job = get(id);
+        if (partition < 0 || partition >= job.getPartitions() || !job.isCompleted(partition)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Partition is not completed");
+        }
+        return job.partitionFile(partition);
+    }
+
+    private void schedule(ExportJob job, int from) {
+        synchronized (workers) {
+            List<Integer> partitions = job.queue(from);
+            if (partitions.size() > workers.getQueue().remainingCapacity()) {
+                job.cancel();
+                throw queueFull(partitions.size());
+            }
+            try {
+                for (int partition : partitions) {
+                    workers.execute(() -> write(job, partition));
+                }
+            } catch (RejectedExecutionException exception) {
+                //the partitions already queued find the job cancelled and skip
+                job.cancel();
+                throw queueFull(partitions.size());
+            }
+        }
+    }
+
+    private static ResponseStatusException queueFull(int partitions) {
+        LOGGER.error("Export queue cannot hold {} more partitions", partitions);
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Export queue is full");
+    }
+
+    private void write(ExportJob job, int partition) {
+        if (!job.start(partition)) {
+            return;
+        }
+        long first = job.partitionStart(partition);
+        int length = job.partitionLength(partition);
+        Path temporary = job.temporaryFile(partition);
+        boolean csv = job.getFormat() == ExportJob.Format.CSV;
+        boolean columnar = job.getFormat().isColumnar();
+        boolean timed = metrics.isEnabled();
+        long start = metrics.start();
+        long generationNanos = 0;
+        long serializationNanos = 0;
+        int written = 0;
+        ExportJob.Status status = ExportJob.Status.COMPLETED;
+        String failure = null;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream stream = columnar ? null : job.getCompression().wrap(Channels.newOutputStream(channel), WRITE_BUFFER);
+                 AddressArrowWriter arrow = columnar ? new AddressArrowWriter(channel, job.getCompression() == ExportJob.Compression.ZSTD) : null) {
+                JsonOutput output = new JsonOutput(WRITE_BUFFER + JsonOutput.FLUSH_THRESHOLD);
+                if (csv) {
+                    output.writeRaw(AddressCsvWriter.HEADER);
+                }
+                AddressBatch batch = new AddressBatch(Math.min(BATCH_SIZE, length));
+                long clock = start;
+                while (written < length) {
+                    int block = Math.min(BATCH_SIZE, length - written);
+                    batch.clear();
+                    AddressFactory.appendAddresses(batch, job.getCountry(), job.getSeed(), first + written, block);
+                    if (timed) {
+                        long generated = System.nanoTime();
+                        generationNanos += generated - clock;
+                        clock = generated;
+                    }
+                    if (arrow != null) {
+                        arrow.write(batch, block);
+                    }
+                    for (int row = 0; row < block && stream != null; row++) {
+                        if (csv) {
+                            AddressCsvWriter.write(batch, row, output);
+                        } else {
+                            AddressJsonWriter.write(batch, row, output);
+                        }
+                        output.writeByte('\n');
+                        if (output.size() >= WRITE_BUFFER) {
+                            output.writeTo(stream);
+                        }
+                    }
+                    written += block;
+                    job.written(partition, written);
+                    if (timed) {
+                        long serialized = System.nanoTime();
+                        serializationNanos += serialized - clock;
+                        clock = serialized;
+                    }
+                    if (job.isCancelled()) {
+                        status = ExportJob.Status.CANCELLED;
+                        break;
+                    }
+                }
+                if (stream != null) {
+                    output.writeTo(stream);
+                }
+            }
+            if (status == ExportJob.Status.COMPLETED) {
+                Files.move(temporary, job.partitionFile(partition), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                job.written(partition, length);
+            }
+        } catch (IOException | RuntimeException | LinkageError exception) {
+            LOGGER.error("Export {} partition {} failed after {} addresses", job.getId(), partition, written, exception);
+            status = ExportJob.Status.FAILED;
+            failure = exception.getMessage();
+        }
+        if (status != ExportJob.Status.COMPLETED) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException exception) {
+                LOGGER.warn("Temporary file {} cannot be deleted: {}", temporary, exception.getMessage());
+            }
+        }
+        metrics.recordExportPartition(job.getCountry(), written, start, generationNanos, serializationNanos);
+        if (job.end(partition, status, failure)) {
+            LOGGER.info("Export {} {}: {} addresses, {} per second", job.getId(), job.getStatus(), job.getWritten(), job.getAddressesPerSecond());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+}
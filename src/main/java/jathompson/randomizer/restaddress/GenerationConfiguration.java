@@ -0,0 +1,20 @@
+package jathompson.randomizer.restaddress;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the generation settings before the first batch is generated. Batches of at least
+ * <code>randomizer.bulk.parallel-threshold</code> addresses are generated in parallel by the common
+ * <code>ForkJoinPool</code>, see <code>AddressFactory</code>; 0 generates every batch on the requesting thread.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Configuration
+public class GenerationConfiguration {
+
+    public GenerationConfiguration(@Value("${randomizer.bulk.parallel-threshold:" + AddressFactory.DEFAULT_PARALLEL_THRESHOLD + "}") int parallelThreshold) {
+        AddressFactory.setParallelThreshold(parallelThreshold);
+    }
+}
@@ -0,0 +1,28 @@
+package jathompson.randomizer.restaddress;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the <code>AddressMetrics</code> of the REST calls. Set <code>randomizer.metrics.enabled=false</code> to
+ * record no address metrics at all.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public AddressMetrics addressMetrics(ObjectProvider<MeterRegistry> registry,
+                                         @Value("${randomizer.metrics.enabled:true}") boolean enabled) {
+        MeterRegistry meterRegistry = registry.getIfAvailable();
+        if (!enabled || meterRegistry == null) {
+            return AddressMetrics.DISABLED;
+        }
+        return new AddressMetrics(meterRegistry);
+    }
+}
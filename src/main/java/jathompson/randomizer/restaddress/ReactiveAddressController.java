@@ -0,0 +1,185 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Streaming REST call of the reactive stack, active with <code>spring.main.web-application-type=reactive</code>.
+ * The application then runs on Netty and a stream holds no thread while its client is slow: addresses are only
+ * generated when the client has asked for more, so thousands of slow consumers are served by a few event loop and
+ * parallel scheduler threads. The other REST calls are served by the same controllers as on the servlet stack.
+ * </p>
+ * <p>
+ * The response and its parameters are the same as those of <code>AddressStreamController</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAddressController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveAddressController.class);
+
+    //addresses serialized into one buffer, so a buffer is written per batch rather than per address
+    private static final int BATCH_SIZE = 64;
+
+    private final AddressMetrics metrics;
+    private final AddressRequestValidator validator;
+    private final UniqueFilterFactory uniqueFilters;
+
+    public ReactiveAddressController(AddressMetrics metrics, AddressRequestValidator validator, UniqueFilterFactory uniqueFilters) {
+        this.metrics = metrics;
+        this.validator = validator;
+        this.uniqueFilters = uniqueFilters;
+        //load the data up front, generation must not block on reading data files once streams are running
+        for (String countryCode : CountryRegistry.getCountryCodes()) {
+            try {
+                AddressData.getCountryData(countryCode);
+            } catch (RuntimeException exception) {
+                LOGGER.error("{} data could not be loaded, its requests will fail", countryCode);
+            }
+        }
+    }
+
+    /**
+     * Streams addresses to the client as it consumes them.
+     *
+     * @param country Type of address to generate
+     * @param count Number of addresses to generate, limited to <code>AddressConstants.MAX_STREAM_COUNT</code>
+     * @param seed Optional seed used to reproduce the stream
+     * @param offset Index of the first address when a seed is specified
+     * @param unique Whether the addresses of the stream must be unique
+     * @param state Optional state name or code of every address, requires a country
+     * @param city Optional city of every address, requires a country
+     * @param postalPrefix Optional leading characters of every postal code, requires a country
+     * @param accept Accept header of the request
+     * @return response body publishing the serialized addresses
+     * @throws org.springframework.web.server.ResponseStatusException if the country, count, offset or a constraint is invalid
+     */
+    @GetMapping("/randomizer/addresses/stream")
+    public ResponseEntity<Flux<DataBuffer>> streamRandomAddresses(@RequestParam(value = "country", defaultValue = AddressData.DEFAULT) String country,
+                                                                  @RequestParam(value = "count", defaultValue = "10") int count,
+                                                                  @RequestParam(value = "seed", required = false) Long seed,
+                                                                  @RequestParam(value = "offset", defaultValue = "0") long offset,
+                                                                  @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+                                                                  @RequestParam(value = "state", required = false) String state,
+                                                                  @RequestParam(value = "city", required = false) String city,
+                                                                  @RequestParam(value = "postalPrefix", required = false) String postalPrefix,
+                                                                  @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) String accept) {
+        validator.validateCountry(country);
+        validator.validateCount(count, AddressConstants.MAX_STREAM_COUNT);
+        validator.validateOffset(offset, count);
+        AddressConstraints constraints = validator.validateConstraints(country, state, city, postalPrefix);
+        boolean ndjson = MediaType.parseMediaTypes(accept).stream().anyMatch(AddressController.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        //the filter's memory is released once the body completes, fails or is cancelled
+        UniqueFilter filter = uniqueFilters.create(unique, count);
+        //the addresses are generated by scheduler threads, which trace only if the request did
+        String traceId = AddressDiagnostics.getTraceId();
+        Flux<DataBuffer> body = Flux.defer(() -> {
+            StreamEncoder encoder = new StreamEncoder(ndjson);
+            return createAddresses(country, count, seed, offset, constraints, filter, traceId, encoder)
+                    .buffer(BATCH_SIZE)
+                    .map(encoder::encode)
+                    .concatWith(Flux.defer(() -> Flux.just(encoder.end())))
+                    .doFinally(signal -> {
+                        uniqueFilters.release(filter);
+                        if (encoder.written < count) {
+                            LOGGER.debug("Stream ended by {} after {} of {} addresses", signal, encoder.written, count);
+                        }
+                        metrics.recordStream(country, encoder.written, encoder.start, encoder.generationNanos, encoder.serializationNanos);
+                    });
+        });
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(ndjson ? AddressController.APPLICATION_NDJSON : MediaType.APPLICATION_JSON);
+        if (filter != null) {
+            response.header(UniqueFilterFactory.FALSE_POSITIVE_RATE_HEADER, Double.toString(filter.getFalsePositiveRate()));
+        }
+        return response.body(body);
+    }
+
+    //generates each address only when it is requested
+    private Flux<Address> createAddresses(String country, int count, Long seed, long offset, AddressConstraints constraints,
+                                          UniqueFilter filter, String traceId, StreamEncoder encoder) {
+        return Flux.<Address, Integer>generate(() -> 0, (index, sink) -> {
+            RandomSource random = seed == null ? RandomSource.threadLocal() : RandomSource.forIndex(seed, offset + index);
+            long clock = encoder.timed ? System.nanoTime() : 0;
+            AddressDiagnostics.setTraceId(traceId);
+            try {
+                sink.next(AddressFactory.createAddress(country, random, constraints, filter));
+            } catch (UniqueAddressesExhaustedException exhausted) {
+                //the status was sent with the first buffer, end the document so the client can still parse it
+                LOGGER.warn("Stream ended after {} of {} addresses: {}", index, count, exhausted.getReason());
+                sink.complete();
+                return index;
+            } finally {
+                AddressDiagnostics.setTraceId(null);
+            }
+            if (encoder.timed) {
+                encoder.generationNanos += System.nanoTime() - clock;
+            }
+            if (index + 1 == count) {
+                sink.complete();
+            }
+            return index + 1;
+        }).subscribeOn(Schedulers.parallel());
+    }
+
+    //serializes the batches of one stream, its state is only touched by one thread at a time
+    private final class StreamEncoder {
+        private final boolean ndjson;
+        private final boolean timed = metrics.isEnabled();
+        private final long start = metrics.start();
+        private final JsonOutput output = new JsonOutput(JsonOutput.FLUSH_THRESHOLD);
+        private int written;
+        private long generationNanos;
+        private long serializationNanos;
+
+        private StreamEncoder(boolean ndjson) {
+            this.ndjson = ndjson;
+        }
+
+        private DataBuffer encode(List<Address> addresses) {
+            long clock = timed ? System.nanoTime() : 0;
+            output.reset();
+            for (Address address : addresses) {
+                if (written > 0) {
+                    output.writeByte(ndjson ? '\n' : ',');
+                } else if (!ndjson) {
+                    output.writeByte('[');
+                }
+                AddressJsonWriter.write(address, output);
+                written++;
+            }
+            DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(output.toByteArray());
+            if (timed) {
+                serializationNanos += System.nanoTime() - clock;
+            }
+            return buffer;
+        }
+
+        private DataBuffer end() {
+            byte[] end = ndjson ? new byte[]{'\n'} : written == 0 ? new byte[]{'[', ']'} : new byte[]{']'};
+            return DefaultDataBufferFactory.sharedInstance.wrap(end);
+        }
+    }
+}
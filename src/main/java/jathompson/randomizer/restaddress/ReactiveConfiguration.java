@@ -0,0 +1,62 @@
+package jathompson.randomizer.restaddress;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * <p>
+ * Runs the reactive stack on Netty. Tomcat is on the classpath for the servlet stack and would otherwise be
+ * preferred as the reactive server as well. Batches of addresses are written by <code>AddressBatchMessageWriter</code>
+ * ahead of the codecs of Jackson.
+ * </p>
+ * <p>
+ * Bulk requests are invoked on the bounded elastic scheduler rather than on the event loop: a large batch is generated
+ * in slices on the common <code>ForkJoinPool</code> while the calling thread waits for them, which would stall every
+ * connection of the event loop. The other handlers of <code>AddressController</code> generate one address and stay on
+ * the event loop.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfiguration implements WebFluxConfigurer {
+
+    private final AddressMetrics metrics;
+
+    public ReactiveConfiguration(AddressMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new AddressBatchMessageWriter(metrics));
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        TaskExecutorAdapter executor = new TaskExecutorAdapter(Schedulers.boundedElastic()::schedule);
+        //the handler is submitted while the request's trace id is set, see DiagnosticsConfiguration
+        executor.setTaskDecorator(AddressDiagnostics::propagate);
+        configurer.setExecutor(executor).setControllerMethodPredicate(ReactiveConfiguration::isBulkRequest);
+    }
+
+    private static boolean isBulkRequest(HandlerMethod handlerMethod) {
+        return AddressController.class.isAssignableFrom(handlerMethod.getBeanType())
+                && handlerMethod.getMethod().getName().equals("createRandomAddresses");
+    }
+}
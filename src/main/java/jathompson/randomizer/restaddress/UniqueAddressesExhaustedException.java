@@ -0,0 +1,24 @@
+package jathompson.randomizer.restaddress;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * <p>
+ * Thrown when no address unique to a request is found in <code>AddressFactory.MAX_UNIQUE_ATTEMPTS</code> attempts.
+ * A bulk request fails with 503 (Service Unavailable).
+ * </p>
+ * <p>
+ * A stream has already sent its status by then, so it ends its document early rather than failing. Any other error
+ * of the generation still aborts the stream.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class UniqueAddressesExhaustedException extends ResponseStatusException {
+
+    public UniqueAddressesExhaustedException() {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Unique addresses are exhausted");
+    }
+}
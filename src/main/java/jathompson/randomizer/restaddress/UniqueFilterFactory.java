@@ -0,0 +1,112 @@
+package jathompson.randomizer.restaddress;
+
+import jathompson.randomizer.restaddress.util.UniqueFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Creates the <code>UniqueFilter</code> of a request with <code>unique=true</code>. Batches larger than
+ * <code>UniqueFilter.EXACT_LIMIT</code> use a Bloom filter sized for <code>randomizer.unique.false-positive-rate</code>
+ * and bounded by <code>randomizer.unique.max-filter-bytes</code>. The expected false-positive rate of the request is
+ * returned in the <code>X-Unique-False-Positive-Rate</code> response header. A request whose filter would reject more
+ * than <code>MAX_FALSE_POSITIVE_RATE</code> of the new addresses is refused before any address is generated, rather
+ * than running out of unique addresses after the response has started.
+ * </p>
+ * <p>
+ * The filters of concurrent requests share <code>randomizer.unique.max-total-filter-bytes</code>: the memory of a filter
+ * is reserved before it is allocated and returned by <code>release</code> when its request ends. A request finding the
+ * budget exhausted is refused with 503, so the client can retry once other unique requests are done.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Component
+public class UniqueFilterFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UniqueFilterFactory.class);
+
+    /**
+     * Response header holding the expected false-positive rate of a unique batch, 0 when deduplication is exact.
+     */
+    public static final String FALSE_POSITIVE_RATE_HEADER = "X-Unique-False-Positive-Rate";
+
+    /**
+     * Highest false-positive rate of an accepted request, at which the last address is found within
+     * <code>AddressFactory.MAX_UNIQUE_ATTEMPTS</code> attempts but with a negligible probability.
+     */
+    public static final double MAX_FALSE_POSITIVE_RATE = 0.5;
+
+    private final double falsePositiveRate;
+    private final long maxFilterBytes;
+    private final long maxTotalFilterBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    public UniqueFilterFactory(@Value("${randomizer.unique.false-positive-rate:0.001}") double falsePositiveRate,
+                               @Value("${randomizer.unique.max-filter-bytes:67108864}") long maxFilterBytes,
+                               @Value("${randomizer.unique.max-total-filter-bytes:268435456}") long maxTotalFilterBytes) {
+        //fail at startup rather than on the first unique request
+        long largestFilter = UniqueFilter.sizeOf(Integer.MAX_VALUE, falsePositiveRate, maxFilterBytes);
+        if (maxTotalFilterBytes < largestFilter) {
+            throw new IllegalArgumentException("Total filter size " + maxTotalFilterBytes + " must be at least the "
+                    + largestFilter + " bytes of the largest filter");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxFilterBytes = maxFilterBytes;
+        this.maxTotalFilterBytes = maxTotalFilterBytes;
+    }
+
+    /**
+     * Filter for a batch.
+     *
+     * @param unique whether the batch must be unique
+     * @param count number of addresses in the batch
+     * @return empty filter, to be passed to <code>release</code> when the batch is done, or null when the batch may
+     * hold duplicates
+     * @throws ResponseStatusException if the filter bounded by <code>randomizer.unique.max-filter-bytes</code> cannot
+     * hold the batch, or the filters of concurrent requests use up <code>randomizer.unique.max-total-filter-bytes</code>
+     */
+    public UniqueFilter create(boolean unique, int count) {
+        if (!unique) {
+            return null;
+        }
+        double rate = UniqueFilter.falsePositiveRate(count, falsePositiveRate, maxFilterBytes);
+        if (rate > MAX_FALSE_POSITIVE_RATE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Count " + count + " is too large for unique addresses, "
+                    + "the filter of " + maxFilterBytes + " bytes would reject " + Math.round(rate * 100) + "% of them");
+        }
+        long bytes = UniqueFilter.sizeOf(count, falsePositiveRate, maxFilterBytes);
+        long reserved;
+        do {
+            reserved = reservedBytes.get();
+            if (reserved + bytes > maxTotalFilterBytes) {
+                LOGGER.warn("Unique request of {} addresses refused, {} of {} filter bytes are in use", count, reserved, maxTotalFilterBytes);
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Memory for unique requests is exhausted, retry later");
+            }
+        } while (!reservedBytes.compareAndSet(reserved, reserved + bytes));
+        try {
+            return UniqueFilter.create(count, falsePositiveRate, maxFilterBytes);
+        } catch (RuntimeException | Error e) {
+            reservedBytes.addAndGet(-bytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the memory of a filter to the budget of concurrent requests.
+     *
+     * @param filter filter returned by <code>create</code> whose batch is done, may be null
+     */
+    public void release(UniqueFilter filter) {
+        if (filter != null) {
+            reservedBytes.addAndGet(-filter.getBytes());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package jathompson.randomizer.restaddress;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Registers <code>AddressHttpMessageConverter</code> ahead of Jackson so addresses are serialized by
+ * <code>AddressJsonWriter</code>. Set <code>randomizer.json.direct-writer.enabled=false</code> to serialize
+ * single and bulk responses with Jackson instead. Streaming responses always use <code>AddressJsonWriter</code>.
+ * </p>
+ * <p>
+ * The binary formats are registered after JSON, which stays the format of requests accepting any type:
+ * <code>AddressProtobufHttpMessageConverter</code> for <code>application/x-protobuf</code>, and the CBOR and Smile
+ * converters of Jackson with the mappers of <code>BinaryObjectMappers</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    private final AddressMetrics metrics;
+    private final BinaryObjectMappers binaryMappers;
+    private final boolean directWriter;
+
+    public WebConfiguration(AddressMetrics metrics, BinaryObjectMappers binaryMappers,
+                            @Value("${randomizer.json.direct-writer.enabled:true}") boolean directWriter) {
+        this.metrics = metrics;
+        this.binaryMappers = binaryMappers;
+        this.directWriter = directWriter;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        if (directWriter) {
+            converters.add(0, new AddressHttpMessageConverter(metrics));
+        }
+        //the default CBOR and Smile converters do not apply the spring.jackson settings
+        converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+                || converter instanceof MappingJackson2SmileHttpMessageConverter);
+        converters.add(new MappingJackson2CborHttpMessageConverter(binaryMappers.getCbor()));
+        converters.add(new MappingJackson2SmileHttpMessageConverter(binaryMappers.getSmile()));
+        converters.add(new AddressProtobufHttpMessageConverter(metrics));
+    }
+}
@@ -8,10 +8,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Scanner;
-import java.util.concurrent.ThreadLocalRandom;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -20,6 +26,21 @@ import java.util.concurrent.ThreadLocalRandom;
  * The current implementation reads the specified files in UTF-8 encoding from <code>resources/data</code> and retains the data in memory for fast access.
  *
  * </p>
+ * <p>
+ * Each country's data files are loaded into its own <code>Dictionary</code> and exposed as immutable
+ * <code>StringTable</code>s through <code>CountryData</code>. A country is loaded on first use, independently of the
+ * other countries, so only the countries which are requested use heap and a data file which cannot be read only fails
+ * the requests for its country. When <code>randomizer.dataset.dir</code> names a directory of binary datasets compiled
+ * by <code>DatasetCompiler</code>, the country's <code>&lt;country code&gt;.bin</code> is memory-mapped instead of
+ * loading the text files, and text files in that directory replace the ones in <code>resources/data</code>.
+ * Generators select values by dictionary reference, so no <code>String</code> is created until a value is read.
+ * State names and codes are paired by row in a <code>StateTable</code>.
+ * </p>
+ * <p>
+ * Each country's data is an immutable snapshot published through a volatile reference, so generators read it
+ * without locking. <code>reload</code> loads a new snapshot from the current files and swaps it in; an
+ * <code>Address</code> keeps the dictionary of the snapshot it was generated from.
+ * </p>
  *
  * @author Jennifer A Thompson
  * @version 1.0
@@ -57,160 +78,301 @@ public class AddressData {
             't', 'u', 'v', 'w', 'x', 'y', 'z'};
 
     /**
-     * Countries currently implemented as specified in <code>/data/ImplementedCountries.txt</code>
+     * Language suffix of the English data files
      */
-    public static final ArrayList<String> implementedCountries = new ArrayList<>();
-    static {
-        Resource resource = new ClassPathResource("/data/ImplementedCountries.txt");
-        try {
-            Scanner fileScanner = new Scanner(resource.getInputStream());
-            while (fileScanner.hasNext()) {
-                implementedCountries.add(fileScanner.nextLine().trim());
-            }
-            LOGGER.debug("implementedCountries initialized to {}", implementedCountries);
-            fileScanner.close();
-
-        } catch (IOException ioException) {
-            LOGGER.error("Failed to populate implementedCountries");
-            ioException.printStackTrace();
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to populate implementedCountries", ioException);
-        }
-
-    }
+    public static final String EN = "EN";
+    /**
+     * Language suffix of the French data files
+     */
+    public static final String FR = "FR";
+    /**
+     * Language suffix of the Spanish data files
+     */
+    public static final String ES = "ES";
+    /**
+     * Language suffix of the Dutch data files
+     */
+    public static final String NL = "NL";
 
-    //Variables holding address data
-    //US & English
-    public static final ArrayList<String> streetsEN = new ArrayList<>();
-    public static final ArrayList<String> citysEN = new ArrayList<>();
-    public static final ArrayList<String> countysEN = new ArrayList<>();
-    public static final ArrayList<String> statesUSA = new ArrayList<>();
-    public static final ArrayList<String> stateCodesUSA = new ArrayList<>();
-    public static final ArrayList<String> countryUSA = new ArrayList<>();
-    //Canadian & French
-    public static final ArrayList<String> streetsFR = new ArrayList<>();
-    public static final ArrayList<String> citysFR = new ArrayList<>();
-    public static final ArrayList<String> countysFR = new ArrayList<>();
-    public static final ArrayList<String> statesCAN = new ArrayList<>();
-    public static final ArrayList<String> stateCodesCAN = new ArrayList<>();
-    public static final ArrayList<String> countryCAN = new ArrayList<>();
-    //Mexico and Spanish
-    public static final ArrayList<String> streetsES = new ArrayList<>();
-    public static final ArrayList<String> citysES = new ArrayList<>();
-    public static final ArrayList<String> countysES = new ArrayList<>();
-    public static final ArrayList<String> statesMEX = new ArrayList<>();
-    public static final ArrayList<String> stateCodesMEX = new ArrayList<>();
-    public static final ArrayList<String> countryMEX = new ArrayList<>();
-    //Netherlands and Dutch
-    public static final ArrayList<String> streetsNL = new ArrayList<>();
-    public static final ArrayList<String> citysNL = new ArrayList<>();
-    //Larger municipalities (counties) do not exist in the Netherlands - will repeat city value
-    public static final ArrayList<String> statesNLD = new ArrayList<>();
-    public static final ArrayList<String> stateCodesNLD = new ArrayList<>();
-    public static final ArrayList<String> countryNLD = new ArrayList<>();
+    /**
+     * Property naming a directory of binary datasets compiled by <code>DatasetCompiler</code>, which are
+     * memory-mapped instead of loading the text files from the classpath, or of text files replacing the ones on the classpath
+     */
+    public static final String DATASET_DIR_PROPERTY = "randomizer.dataset.dir";
 
+    //data files of each country, without the directory and .txt extension
+    private static final Map<String, List<String>> DATA_FILE_NAMES = new LinkedHashMap<>();
+    //countries are loaded on first use
+    private static final Map<String, CountryDataLoader> LOADERS = new LinkedHashMap<>();
 
     static {
-        HashMap<String, ArrayList<String>> sourceList = new HashMap<>();
-        //BEGIN Populate data for US-CAN/English
-        sourceList.put("/data/StreetNames_EN.txt", streetsEN);
-        sourceList.put("/data/CityNames_EN.txt", citysEN);
-        sourceList.put("/data/CountyNames_EN.txt", countysEN);
-        sourceList.put("/data/StateNames_USA.txt", statesUSA);
-        sourceList.put("/data/StateCodes_USA.txt", stateCodesUSA);
-        sourceList.put("/data/CountryNameVariations_USA.txt", countryUSA);
-        //END - Populate data for US-CAN/English
-        //BEGIN - Populate data for Canada/French - Canadian Only data
-        sourceList.put("/data/StreetNames_FR.txt", streetsFR);
-        sourceList.put("/data/CityNames_FR.txt", citysFR);
-        sourceList.put("/data/CountyNames_FR.txt", countysFR);
-        sourceList.put("/data/StateNames_CAN.txt", statesCAN);
-        sourceList.put("/data/StateCodes_CAN.txt", stateCodesCAN);
-        sourceList.put("/data/CountryNameVariations_CAN.txt", countryCAN);
-        //END - Populate data for Canada/FR - Canadian Only data
-        //BEGIN - Populate data for Mexico/ES - Mexican Only data
-        sourceList.put("/data/StreetNames_ES.txt", streetsES);
-        sourceList.put("/data/CityNames_ES.txt", citysES);
-        sourceList.put("/data/CountyNames_ES.txt", countysES);
-        sourceList.put("/data/StateNames_MEX.txt", statesMEX);
-        sourceList.put("/data/StateCodes_MEX.txt", stateCodesMEX);
-        sourceList.put("/data/CountryNameVariations_MEX.txt", countryMEX);
-        //END - Populate data for Mexico/ES - Mexican Only data
-        //BEGIN - Populate data for Netherlands/Dutch - Netherlands Only data
-        sourceList.put("/data/StreetNames_NL.txt", streetsNL);
-        sourceList.put("/data/CityNames_NL.txt", citysNL);
-        sourceList.put("/data/StateNames_NLD.txt", statesNLD);
-        sourceList.put("/data/StateCodes_NLD.txt", stateCodesNLD);
-        sourceList.put("/data/CountryNameVariations_NLD.txt", countryNLD);
-        //END - Populate data for Netherlands/NL - Netherlands Only data
-
-        sourceList.forEach((filepath, list) -> {
-            Resource resource = new ClassPathResource(filepath);
-            try {
-                Scanner fileScanner = new Scanner(resource.getInputStream());
-                while (fileScanner.hasNext()) {
-                    list.add(fileScanner.nextLine().trim());
-                }
-                LOGGER.debug("{} populated to ArrayList, values are:\n{}", filepath, list);
-                fileScanner.close();
+        //US/English
+        DATA_FILE_NAMES.put(USA, List.of("StreetNames_EN", "CityNames_EN", "CountyNames_EN",
+                "StateNames_USA", "StateCodes_USA", "CountryNameVariations_USA"));
+        //Canada/English & French - French is used for Quebec
+        DATA_FILE_NAMES.put(CAN, List.of("StreetNames_EN", "CityNames_EN", "CountyNames_EN",
+                "StreetNames_FR", "CityNames_FR", "CountyNames_FR",
+                "StateNames_CAN", "StateCodes_CAN", "CountryNameVariations_CAN"));
+        //Mexico/ES
+        DATA_FILE_NAMES.put(MEX, List.of("StreetNames_ES", "CityNames_ES", "CountyNames_ES",
+                "StateNames_MEX", "StateCodes_MEX", "CountryNameVariations_MEX"));
+        //Netherlands/NL - larger municipalities (counties) do not exist in the Netherlands
+        DATA_FILE_NAMES.put(NETHERLANDS, List.of("StreetNames_NL", "CityNames_NL",
+                "StateNames_NLD", "StateCodes_NLD", "CountryNameVariations_NLD"));
+        for (String countryCode : DATA_FILE_NAMES.keySet()) {
+            LOADERS.put(countryCode, new CountryDataLoader(countryCode));
+        }
+    }
 
-            } catch (IOException ioException) {
-                LOGGER.error("Failed to populate from {}", filepath);
-                ioException.printStackTrace();
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to populate from " + filepath, ioException);
-            }
+    /**
+     * Property enabling weighted sampling of the data files with weights, uniform sampling is the default
+     */
+    public static final String WEIGHTED_PROPERTY = "randomizer.data.weighted";
 
-        });
-    }
+    /**
+     * Time a country which failed to load fails its requests before loading it is tried again
+     */
+    public static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    /**
+     * Longest time between two attempts to load a country which keeps failing
+     */
+    public static final long MAX_RETRY_DELAY_MILLIS = 60_000;
 
-    public AddressData() {}
+    private static volatile String datasetDirectory = System.getProperty(DATASET_DIR_PROPERTY);
+    private static volatile boolean weighted = Boolean.getBoolean(WEIGHTED_PROPERTY);
 
+    public AddressData() {}
 
-    public static char getRandomLetter(){
-        return ALPHABET[ThreadLocalRandom.current().nextInt(ALPHABET.length)];
+    /**
+     * Sets the directory of binary datasets and text files, applies to countries loaded or reloaded afterwards.
+     *
+     * @param directory path of the dataset directory, <code>null</code> or empty to only load the text files from the classpath
+     */
+    public static void setDatasetDirectory(String directory) {
+        datasetDirectory = directory;
     }
 
-    public static String getRandomStreetEN(){
-        return AddressData.streetsEN.get(ThreadLocalRandom.current().nextInt(AddressData.streetsEN.size()));
+    /**
+     * Enables weighted sampling, applies to countries loaded or reloaded afterwards. Values of data files with
+     * weights are then drawn in proportion to their weights through alias tables built when the country is loaded.
+     *
+     * @param enabled <code>true</code> to sample weighted data files by weight, <code>false</code> to sample uniformly
+     */
+    public static void setWeighted(boolean enabled) {
+        weighted = enabled;
     }
 
-    public static String getRandomCityEN(){
-        return AddressData.citysEN.get(ThreadLocalRandom.current().nextInt(AddressData.citysEN.size()));
+    /**
+     * Applies the dataset directory and weighting of an application. Countries already loaded with other settings,
+     * by an earlier application in the same JVM, are loaded again from the new settings on their next use.
+     *
+     * @param directory path of the dataset directory, <code>null</code> to only load the text files from the classpath
+     * @param enabled <code>true</code> to sample weighted data files by weight, <code>false</code> to sample uniformly
+     */
+    public static synchronized void configure(String directory, boolean enabled) {
+        if (Objects.equals(directory, datasetDirectory) && enabled == weighted) {
+            return;
+        }
+        datasetDirectory = directory;
+        weighted = enabled;
+        for (CountryDataLoader loader : LOADERS.values()) {
+            loader.unload();
+        }
     }
 
-    public static String getRandomCountyEN(){
-        return AddressData.countysEN.get(ThreadLocalRandom.current().nextInt(AddressData.countysEN.size()));
+    /**
+     * Countries with data files.
+     *
+     * @return ISO 3166-1 alpha-3 codes
+     */
+    public static Set<String> getCountryCodes() {
+        return DATA_FILE_NAMES.keySet();
     }
 
-    public static String getRandomStreetES(){
-        return AddressData.streetsES.get(ThreadLocalRandom.current().nextInt(AddressData.streetsES.size()));
+    /**
+     * Names of a country's data files, without the directory and <code>.txt</code> extension, in dictionary order.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code
+     * @return data file names
+     */
+    public static List<String> getDataFileNames(String countryCode) {
+        List<String> names = DATA_FILE_NAMES.get(countryCode);
+        if (names == null) {
+            throw new IllegalArgumentException("No data files for country " + countryCode);
+        }
+        return names;
     }
 
-    public static String getRandomCityES(){
-        return AddressData.citysES.get(ThreadLocalRandom.current().nextInt(AddressData.citysES.size()));
+    /**
+     * Opens a data file from <code>resources/data</code>.
+     *
+     * @param name data file name
+     * @return stream of the UTF-8 text
+     * @throws IOException if the file cannot be opened
+     */
+    public static InputStream openDataFile(String name) throws IOException {
+        //the class loader of the application, the context class loader of a pool thread may not see the packaged resources
+        Resource resource = new ClassPathResource("data/" + name + ".txt", AddressData.class.getClassLoader());
+        return resource.getInputStream();
     }
 
-    public static String getRandomCountyES(){
-        return AddressData.countysES.get(ThreadLocalRandom.current().nextInt(AddressData.countysES.size()));
-    }
-    public static String getRandomStreetFR() {
-        return AddressData.streetsFR.get(ThreadLocalRandom.current().nextInt(AddressData.streetsFR.size()));
+    /**
+     * Tables of a country, loaded on first use. A country which failed to load fails its requests without retrying
+     * for <code>MIN_RETRY_DELAY_MILLIS</code>, doubled after each further failure up to
+     * <code>MAX_RETRY_DELAY_MILLIS</code>, and is loaded again by the first request after the delay. The other
+     * countries are not affected.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code
+     * @return tables of the country
+     * @throws ResponseStatusException if the country's data cannot be loaded
+     */
+    public static CountryData getCountryData(String countryCode) {
+        CountryDataLoader loader = LOADERS.get(countryCode);
+        if (loader == null) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "No data for country " + countryCode);
+        }
+        return loader.get();
     }
 
-    public static String getRandomCityFR() {
-        return AddressData.citysFR.get(ThreadLocalRandom.current().nextInt(AddressData.citysFR.size()));
+    public static char getRandomLetter(RandomSource random){
+        return ALPHABET[random.nextInt(ALPHABET.length)];
     }
 
-    public static String getRandomCountyFR(){
-        return AddressData.countysFR.get(ThreadLocalRandom.current().nextInt(AddressData.countysFR.size()));
+    /**
+     * Loads a new snapshot of a country's data and publishes it atomically. Addresses generated while the snapshot
+     * is loaded use the previous snapshot, and keep resolving their values against it. If loading fails the previous
+     * snapshot stays in use.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code
+     * @return new tables of the country
+     * @throws ResponseStatusException if the country's data cannot be loaded
+     */
+    public static CountryData reload(String countryCode) {
+        CountryDataLoader loader = LOADERS.get(countryCode);
+        if (loader == null) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "No data for country " + countryCode);
+        }
+        return loader.reload();
     }
 
-    public static String getRandomStreetNL(){
-        return AddressData.streetsNL.get(ThreadLocalRandom.current().nextInt(AddressData.streetsNL.size()));
+    /**
+     * Whether a country's data has been requested, successfully or not. Countries which were never requested are
+     * loaded from the current files on first use and do not need to be reloaded.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code
+     * @return <code>true</code> if the country was loaded or failed to load
+     */
+    public static boolean isLoaded(String countryCode) {
+        CountryDataLoader loader = LOADERS.get(countryCode);
+        return loader != null && loader.isLoaded();
     }
 
-    public static String getRandomCityNL(){
-        return AddressData.citysNL.get(ThreadLocalRandom.current().nextInt(AddressData.citysNL.size()));
+    /**
+     * Countries using a file of the dataset directory, either a data file or a binary dataset.
+     *
+     * @param fileName name of the file, e.g. <code>StreetNames_EN.txt</code> or <code>CAN.bin</code>
+     * @return ISO 3166-1 alpha-3 codes of the countries using the file
+     */
+    public static Set<String> getCountryCodesUsingFile(String fileName) {
+        Set<String> countryCodes = new LinkedHashSet<>();
+        for (Map.Entry<String, List<String>> country : DATA_FILE_NAMES.entrySet()) {
+            if (fileName.equals(country.getKey() + ".bin") || (fileName.endsWith(".txt")
+                    && country.getValue().contains(fileName.substring(0, fileName.length() - ".txt".length())))) {
+                countryCodes.add(country.getKey());
+            }
+        }
+        return countryCodes;
     }
 
-}
+    private static final class CountryDataLoader {
+        private final String countryCode;
+        //published snapshot, read without locking; loads are serialized by the monitor
+        private volatile CountryData data;
+        //last failure, rethrown until retryNanos; guarded by the monitor
+        private ResponseStatusException failure;
+        private long retryNanos;
+        private long retryDelayMillis;
 
+        private CountryDataLoader(String countryCode) {
+            this.countryCode = countryCode;
+        }
+
+        private CountryData get() {
+            CountryData loaded = data;
+            if (loaded == null) {
+                synchronized (this) {
+                    loaded = data;
+                    if (loaded == null) {
+                        if (failure != null && System.nanoTime() - retryNanos < 0) {
+                            throw failure;
+                        }
+                        try {
+                            loaded = load();
+                        } catch (ResponseStatusException exception) {
+                            retryDelayMillis = failure == null ? MIN_RETRY_DELAY_MILLIS : Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+                            retryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+                            failure = exception;
+                            LOGGER.error("{} is retried in {} ms", countryCode, retryDelayMillis);
+                            throw exception;
+                        }
+                        data = loaded;
+                        failure = null;
+                    }
+                }
+            }
+            return loaded;
+        }
+
+        private synchronized CountryData reload() {
+            CountryData loaded = load();
+            data = loaded;
+            failure = null;
+            return loaded;
+        }
+
+        //the next use loads the country from the current settings, addresses keep the snapshot they were generated from
+        private synchronized void unload() {
+            data = null;
+            failure = null;
+        }
+
+        private synchronized boolean isLoaded() {
+            return data != null || failure != null;
+        }
+
+        //a binary dataset in the dataset directory replaces all text files, otherwise each text file in the
+        //dataset directory replaces the one in resources/data
+        private CountryData load() {
+            List<String> names = DATA_FILE_NAMES.get(countryCode);
+            String directory = datasetDirectory;
+            Path path = directory == null || directory.isEmpty() ? null : Path.of(directory);
+            String source = path == null ? "classpath:/data" : path + ", classpath:/data";
+            try {
+                Dataset dataset;
+                Path file = path == null ? null : path.resolve(countryCode + ".bin");
+                if (file != null && Files.exists(file)) {
+                    source = file.toString();
+                    dataset = Dataset.map(file);
+                } else {
+                    dataset = Dataset.fromText(names, name -> {
+                        Path textFile = path == null ? null : path.resolve(name + ".txt");
+                        return textFile != null && Files.exists(textFile) ? Files.newInputStream(textFile) : openDataFile(name);
+                    });
+                }
+                //every table has to be present, a mapped file may have been compiled from other data files
+                for (String name : names) {
+                    LOGGER.debug("{} populated {} values", name, dataset.getTable(name).size());
+                }
+                CountryData countryData = new CountryData(countryCode, dataset, weighted);
+                LOGGER.info("{} dictionary populated with {} values from {}{}", countryCode, dataset.getDictionary().size(), source,
+                        countryData.isWeighted() ? ", weighted" : "");
+                return countryData;
+
+            } catch (IOException | IllegalArgumentException exception) {
+                LOGGER.error("Failed to populate {} from {}", countryCode, source);
+                exception.printStackTrace();
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to populate " + countryCode + " from " + source, exception);
+            }
+        }
+    }
+}
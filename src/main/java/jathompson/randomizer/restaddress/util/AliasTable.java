@@ -0,0 +1,105 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * <p>
+ * Samples the indexes of a table in proportion to their weights in constant time, using Vose's alias method.
+ * </p>
+ * <p>
+ * The table is built once from the weights: each of its <code>n</code> columns holds the probability of returning its
+ * own index and an alias index returned otherwise. A draw picks a column uniformly and keeps the column or takes its
+ * alias, so it costs two random numbers and no allocation whatever the distribution.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class AliasTable {
+    //probabilities are stored as thresholds of a uniform int below PRECISION
+    private static final int PRECISION = 1 << 30;
+
+    private final int[] thresholds;
+    private final int[] aliases;
+
+    private AliasTable(int[] thresholds, int[] aliases) {
+        this.thresholds = thresholds;
+        this.aliases = aliases;
+    }
+
+    /**
+     * Builds the alias table of a set of weights.
+     *
+     * @param weights non-negative weight of each index
+     * @return alias table sampling the indexes of the weights
+     * @throws IllegalArgumentException if a weight is negative or not finite, or no weight is positive
+     */
+    public static AliasTable of(float[] weights) {
+        int n = weights.length;
+        double total = 0;
+        for (float weight : weights) {
+            if (!(weight >= 0) || Float.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weight " + weight + " must be a finite non-negative number");
+            }
+            total += weight;
+        }
+        if (!(total > 0)) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+        //probability of each index scaled so that the average is 1
+        double[] scaled = new double[n];
+        //indexes below and at or above the average, used as stacks
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        int[] thresholds = new int[n];
+        int[] aliases = new int[n];
+        //each small column is topped up by a large one, which loses the same probability
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            thresholds[less] = (int) Math.round(scaled[less] * PRECISION);
+            aliases[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        //remaining columns are full, left over from rounding
+        while (largeCount > 0) {
+            int full = large[--largeCount];
+            thresholds[full] = PRECISION;
+            aliases[full] = full;
+        }
+        while (smallCount > 0) {
+            int full = small[--smallCount];
+            thresholds[full] = PRECISION;
+            aliases[full] = full;
+        }
+        return new AliasTable(thresholds, aliases);
+    }
+
+    public int size() {
+        return thresholds.length;
+    }
+
+    /**
+     * Draws an index in proportion to its weight.
+     *
+     * @param random source of pseudo-random numbers
+     * @return index between 0 (inclusive) and <code>size()</code> (exclusive)
+     */
+    public int sample(RandomSource random) {
+        int column = random.nextInt(thresholds.length);
+        return random.nextInt(PRECISION) < thresholds[column] ? column : aliases[column];
+    }
+}
@@ -0,0 +1,238 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>
+ * The tables used to generate the addresses of one country, held in the country's own <code>Dataset</code>.
+ * </p>
+ * <p>
+ * Tables are named after their data files. Street, city and county tables are looked up by language, the suffix of
+ * the data file name (<code>StreetNames_FR</code> is the French street table), state and country name tables belong
+ * to the country (<code>StateNames_CAN</code>, <code>StateCodes_CAN</code>, <code>CountryNameVariations_CAN</code>).
+ * </p>
+ * <p>
+ * When the country is loaded weighted, tables whose data file has weights are sampled in proportion to them through
+ * an <code>AliasTable</code>, the state table by the weights of the state names. Other tables are sampled uniformly.
+ * </p>
+ * <p>
+ * States, by name or code, and cities are indexed by their <code>key</code> on the first request constrained to a
+ * state or city, so constrained generation looks up its rows instead of rejecting the addresses of other states or
+ * cities. Unconstrained requests never build the indexes, which would otherwise copy every city of a memory-mapped
+ * dataset to the heap on each load.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class CountryData {
+    private final String countryCode;
+    private final Dataset dataset;
+    private final Map<String, StringTable> streets = new HashMap<>();
+    private final Map<String, StringTable> cities = new HashMap<>();
+    private final Map<String, StringTable> counties = new HashMap<>();
+    private final StateTable states;
+    private final StringTable countryNames;
+    private final boolean weighted;
+    //state rows by key of name and code, built on first use
+    private volatile Map<String, int[]> stateRows;
+    //city references by language, then by key of name, built on first use
+    private volatile Map<String, Map<String, Integer>> cityRefs;
+
+    /**
+     * Indexes the tables of a country's dataset, sampled uniformly.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code of the country
+     * @param dataset dataset holding the country's tables
+     * @throws IllegalArgumentException if the state or country name tables are missing
+     */
+    public CountryData(String countryCode, Dataset dataset) {
+        this(countryCode, dataset, false);
+    }
+
+    /**
+     * Indexes the tables of a country's dataset and builds the alias tables of its weights.
+     *
+     * @param countryCode ISO 3166-1 alpha-3 code of the country
+     * @param dataset dataset holding the country's tables
+     * @param weighted whether tables with weights are sampled in proportion to them
+     * @throws IllegalArgumentException if the state or country name tables are missing, or a table has no positive weight
+     */
+    public CountryData(String countryCode, Dataset dataset, boolean weighted) {
+        this.countryCode = countryCode;
+        this.dataset = dataset;
+        this.weighted = weighted;
+        for (String name : dataset.getTableNames()) {
+            int separator = name.lastIndexOf('_');
+            String language = name.substring(separator + 1);
+            switch (name.substring(0, separator + 1)) {
+                case "StreetNames_":
+                    streets.put(language, sampled(name));
+                    break;
+                case "CityNames_":
+                    cities.put(language, sampled(name));
+                    break;
+                case "CountyNames_":
+                    counties.put(language, sampled(name));
+                    break;
+                default:
+            }
+        }
+        states = new StateTable(sampled("StateNames_" + countryCode), dataset.getTable("StateCodes_" + countryCode));
+        countryNames = sampled("CountryNameVariations_" + countryCode);
+    }
+
+    //the table of a data file, weighted by the alias table of its weights when the country is loaded weighted
+    private StringTable sampled(String name) {
+        StringTable table = dataset.getTable(name);
+        float[] weights = weighted ? dataset.getWeights(name) : null;
+        if (weights == null) {
+            return table;
+        }
+        try {
+            return table.weighted(AliasTable.of(weights));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException(name + " has invalid weights: " + exception.getMessage(), exception);
+        }
+    }
+
+    private Map<String, int[]> stateRows() {
+        Map<String, int[]> index = stateRows;
+        return index != null ? index : buildStateRows();
+    }
+
+    //the first constrained requests wait for one index rather than each building their own
+    private synchronized Map<String, int[]> buildStateRows() {
+        if (stateRows == null) {
+            Map<String, int[]> index = new HashMap<>();
+            for (int row = 0; row < states.size(); row++) {
+                addStateRow(index, key(states.getNames().get(row)), row);
+                addStateRow(index, key(states.getCodes().get(row)), row);
+            }
+            stateRows = index;
+        }
+        return stateRows;
+    }
+
+    private static void addStateRow(Map<String, int[]> index, String key, int row) {
+        int[] rows = index.get(key);
+        if (rows == null) {
+            index.put(key, new int[]{row});
+        } else if (rows[rows.length - 1] != row) {
+            rows = Arrays.copyOf(rows, rows.length + 1);
+            rows[rows.length - 1] = row;
+            index.put(key, rows);
+        }
+    }
+
+    private Map<String, Map<String, Integer>> cityRefs() {
+        Map<String, Map<String, Integer>> index = cityRefs;
+        return index != null ? index : buildCityRefs();
+    }
+
+    private synchronized Map<String, Map<String, Integer>> buildCityRefs() {
+        if (cityRefs == null) {
+            Map<String, Map<String, Integer>> index = new HashMap<>();
+            for (Map.Entry<String, StringTable> entry : cities.entrySet()) {
+                StringTable table = entry.getValue();
+                Map<String, Integer> refs = new HashMap<>();
+                for (int i = 0; i < table.size(); i++) {
+                    refs.putIfAbsent(key(table.get(i)), table.ref(i));
+                }
+                index.put(entry.getKey(), refs);
+            }
+            cityRefs = index;
+        }
+        return cityRefs;
+    }
+
+    /**
+     * Normalizes a state or city name for the indexes, ignoring case and surrounding whitespace.
+     *
+     * @param value name as requested or loaded
+     * @return index key
+     */
+    public static String key(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Rows of the states matching a key.
+     *
+     * @param key key of a state name or code
+     * @return rows of the matching states, or null if no state matches
+     */
+    public int[] findStateRows(String key) {
+        return stateRows().get(key);
+    }
+
+    /**
+     * Reference of a city, preferably from the table of the specified language.
+     *
+     * @param language language of the address
+     * @param key key of the city name
+     * @return dictionary reference of the city, or <code>Dictionary.NO_VALUE</code> if no city matches
+     */
+    public int findCityRef(String language, String key) {
+        Map<String, Map<String, Integer>> index = cityRefs();
+        Map<String, Integer> refs = index.get(language);
+        Integer ref = refs == null ? null : refs.get(key);
+        if (ref == null) {
+            for (Map<String, Integer> languageRefs : index.values()) {
+                ref = languageRefs.get(key);
+                if (ref != null) {
+                    break;
+                }
+            }
+        }
+        return ref == null ? Dictionary.NO_VALUE : ref;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    /**
+     * Dictionary resolving the references of every table of the country.
+     *
+     * @return dictionary of the country's values
+     */
+    public Dictionary getDictionary() {
+        return dataset.getDictionary();
+    }
+
+    public StringTable getStreets(String language) {
+        return table(streets, language, "StreetNames_");
+    }
+
+    public StringTable getCities(String language) {
+        return table(cities, language, "CityNames_");
+    }
+
+    public StringTable getCounties(String language) {
+        return table(counties, language, "CountyNames_");
+    }
+
+    public StateTable getStates() {
+        return states;
+    }
+
+    public StringTable getCountryNames() {
+        return countryNames;
+    }
+
+    private StringTable table(Map<String, StringTable> tables, String language, String prefix) {
+        StringTable table = tables.get(language);
+        if (table == null) {
+            throw new IllegalArgumentException(countryCode + " data has no table " + prefix + language);
+        }
+        return table;
+    }
+}
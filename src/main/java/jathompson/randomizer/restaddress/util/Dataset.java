@@ -0,0 +1,397 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A <code>Dictionary</code> together with the named <code>StringTable</code>s it holds, one per data file.
+ * </p>
+ * <p>
+ * A dataset is either loaded from text files onto the heap with <code>fromText</code>, or compiled once with
+ * <code>compile</code> to a binary file which is memory-mapped with <code>map</code>. Mapping reads nothing but the
+ * header, the values stay in the page cache off-heap, so startup time and heap usage do not grow with the dataset.
+ * </p>
+ * <p>
+ * A line of a data file may end with <code>|weight</code>, a non-negative number such as the population of a state or
+ * the frequency of a street name, used for weighted sampling. Lines of a weighted file without a weight weigh 1, a
+ * file without any weight has no weights and is sampled uniformly.
+ * </p>
+ * <p>
+ * Binary format, big-endian:
+ * </p>
+ * <pre>
+ * int  magic "RADS", int version, int value count, int table count
+ * long offsets position, long flags position, long arena position, long arena length
+ * table count x (UTF name, int first reference, int size, int weight count, weight count x float weight)
+ * offsets: value count + 1 longs, entry i + 1 is the end of value i in the arena
+ * flags: one bit per value, set when the value needs escaping in JSON
+ * arena: UTF-8 values, padded so that no value spans a chunk of Dictionary.CHUNK_SIZE bytes
+ * </pre>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class Dataset {
+    static final int MAGIC = 0x52414453;
+    static final int VERSION = 2;
+    //version 1 files have no weights
+    private static final int UNWEIGHTED_VERSION = 1;
+    private static final int PREAMBLE_LENGTH = 48;
+
+    /**
+     * Opens the text file of a data file name.
+     */
+    @FunctionalInterface
+    public interface TextSource {
+        InputStream open(String name) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValueConsumer {
+        void accept(String value) throws IOException;
+    }
+
+    private final Dictionary dictionary;
+    private final Map<String, StringTable> tables;
+    private final Map<String, float[]> weights;
+
+    private Dataset(Dictionary dictionary, Map<String, StringTable> tables, Map<String, float[]> weights) {
+        this.dictionary = dictionary;
+        this.tables = Collections.unmodifiableMap(tables);
+        this.weights = weights;
+    }
+
+    /**
+     * Loads the non-blank, trimmed lines of each data file into a heap dictionary, and their weights.
+     *
+     * @param names data file names, each becomes a table
+     * @param source opens the text of a data file
+     * @return loaded dataset
+     * @throws IOException if a data file cannot be read
+     */
+    public static Dataset fromText(List<String> names, TextSource source) throws IOException {
+        //values are appended to the dictionary first, tables are views of the finished dictionary
+        Dictionary.Builder builder = Dictionary.builder();
+        Map<String, int[]> ranges = new LinkedHashMap<>();
+        Map<String, float[]> weights = new HashMap<>();
+        for (String name : names) {
+            int first = builder.size();
+            putWeights(weights, name, readValues(source, name, builder::add));
+            ranges.put(name, new int[]{first, builder.size() - first});
+        }
+        return withTables(builder.build(), ranges, weights);
+    }
+
+    /**
+     * Compiles data files to a binary dataset file. Values are streamed to disk, so the size of the dataset is
+     * limited by the number of values rather than by the heap.
+     *
+     * @param names data file names, each becomes a table
+     * @param source opens the text of a data file
+     * @param file binary dataset file to write, replaced if it exists
+     * @throws IOException if a data file cannot be read or the dataset file cannot be written
+     */
+    public static void compile(List<String> names, TextSource source, Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path arenaFile = Files.createTempFile(directory, file.getFileName().toString(), ".arena");
+        try {
+            Map<String, int[]> ranges = new LinkedHashMap<>();
+            Map<String, float[]> weights = new HashMap<>();
+            ArenaWriter writer;
+            try (OutputStream arena = new BufferedOutputStream(Files.newOutputStream(arenaFile), 1 << 16)) {
+                writer = new ArenaWriter(arena);
+                for (String name : names) {
+                    int first = writer.count;
+                    putWeights(weights, name, readValues(source, name, writer));
+                    ranges.put(name, new int[]{first, writer.count - first});
+                }
+            }
+            writeDataset(file, ranges, weights, writer, arenaFile);
+        } finally {
+            Files.deleteIfExists(arenaFile);
+        }
+    }
+
+    /**
+     * Memory-maps a binary dataset file written by <code>compile</code>. The file must not be modified while mapped.
+     *
+     * @param file binary dataset file
+     * @return mapped dataset
+     * @throws IOException if the file cannot be read or is not a valid dataset file
+     */
+    public static Dataset map(Path file) throws IOException {
+        Map<String, int[]> ranges = new LinkedHashMap<>();
+        Map<String, float[]> weights = new HashMap<>();
+        int valueCount;
+        long offsetsPosition;
+        long flagsPosition;
+        long arenaPosition;
+        long arenaLength;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(file + " is not a dataset file");
+            }
+            int version = input.readInt();
+            if (version != VERSION && version != UNWEIGHTED_VERSION) {
+                throw new IOException(file + " has dataset version " + version + ", expected " + VERSION);
+            }
+            valueCount = input.readInt();
+            int tableCount = input.readInt();
+            offsetsPosition = input.readLong();
+            flagsPosition = input.readLong();
+            arenaPosition = input.readLong();
+            arenaLength = input.readLong();
+            for (int i = 0; i < tableCount; i++) {
+                String name = input.readUTF();
+                ranges.put(name, new int[]{input.readInt(), input.readInt()});
+                if (version != UNWEIGHTED_VERSION) {
+                    float[] tableWeights = new float[input.readInt()];
+                    for (int j = 0; j < tableWeights.length; j++) {
+                        tableWeights[j] = input.readFloat();
+                    }
+                    putWeights(weights, name, tableWeights);
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (valueCount < 0 || arenaPosition + arenaLength != channel.size()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((arenaLength + Dictionary.CHUNK_SIZE - 1) >>> Dictionary.CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long chunkPosition = (long) i << Dictionary.CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, arenaPosition + chunkPosition,
+                        Math.min(Dictionary.CHUNK_SIZE, arenaLength - chunkPosition));
+            }
+            Dictionary dictionary = new Dictionary(chunks,
+                    channel.map(FileChannel.MapMode.READ_ONLY, offsetsPosition, (valueCount + 1L) * Long.BYTES).asLongBuffer(),
+                    channel.map(FileChannel.MapMode.READ_ONLY, flagsPosition, (valueCount + 7) / 8));
+            return withTables(dictionary, ranges, weights);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException exception) {
+            throw new IOException(file + " is truncated or corrupt", exception);
+        }
+    }
+
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Table of the values loaded from a data file.
+     *
+     * @param name data file name
+     * @return table of the values
+     * @throws IllegalArgumentException if the dataset has no table of that name
+     */
+    public StringTable getTable(String name) {
+        StringTable table = tables.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Dataset has no table " + name);
+        }
+        return table;
+    }
+
+    public Set<String> getTableNames() {
+        return tables.keySet();
+    }
+
+    /**
+     * Weights of the values of a table, in table order.
+     *
+     * @param name data file name
+     * @return copy of the weights, or null if the data file has no weights
+     */
+    public float[] getWeights(String name) {
+        float[] tableWeights = weights.get(name);
+        return tableWeights == null ? null : tableWeights.clone();
+    }
+
+    private static Dataset withTables(Dictionary dictionary, Map<String, int[]> ranges, Map<String, float[]> weights) {
+        Map<String, StringTable> tables = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> range : ranges.entrySet()) {
+            float[] tableWeights = weights.get(range.getKey());
+            if (tableWeights != null && tableWeights.length != range.getValue()[1]) {
+                throw new IllegalArgumentException("Table " + range.getKey() + " has " + tableWeights.length
+                        + " weights for " + range.getValue()[1] + " values");
+            }
+            tables.put(range.getKey(), dictionary.table(range.getValue()[0], range.getValue()[1]));
+        }
+        return new Dataset(dictionary, tables, weights);
+    }
+
+    private static void putWeights(Map<String, float[]> weights, String name, float[] tableWeights) {
+        if (tableWeights != null && tableWeights.length > 0) {
+            weights.put(name, tableWeights);
+        }
+    }
+
+    //trims each line, skipping blank lines; lines end with \r\n, \r or \n. A last | followed by a number separates
+    //the weight, any other | is part of the value. Returns the weights, null if no line has one
+    private static float[] readValues(TextSource source, String name, ValueConsumer consumer) throws IOException {
+        float[] weights = null;
+        int count = 0;
+        int lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.open(name), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String value = line.trim();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                float weight = 1;
+                int separator = value.lastIndexOf('|');
+                if (separator >= 0 && isNumber(value.substring(separator + 1))) {
+                    weight = parseWeight(name, value.substring(separator + 1));
+                    value = value.substring(0, separator).trim();
+                    if (value.isEmpty()) {
+                        throw new IOException(name + " has a weight without a value on line " + lineNumber + ": " + line.trim());
+                    }
+                    if (weights == null) {
+                        weights = new float[Math.max(16, count * 2)];
+                        Arrays.fill(weights, 0, count, 1);
+                    }
+                }
+                consumer.accept(value);
+                if (weights != null) {
+                    if (count == weights.length) {
+                        weights = Arrays.copyOf(weights, count * 2);
+                    }
+                    weights[count] = weight;
+                }
+                count++;
+            }
+        }
+        return weights == null ? null : Arrays.copyOf(weights, count);
+    }
+
+    private static boolean isNumber(String text) {
+        try {
+            Float.parseFloat(text.trim());
+            return true;
+        } catch (NumberFormatException exception) {
+            return false;
+        }
+    }
+
+    private static float parseWeight(String name, String weight) throws IOException {
+        float parsed;
+        try {
+            parsed = Float.parseFloat(weight.trim());
+        } catch (NumberFormatException exception) {
+            parsed = Float.NaN;
+        }
+        if (!(parsed >= 0) || Float.isInfinite(parsed)) {
+            throw new IOException(name + " has an invalid weight " + weight + ", weights must be finite non-negative numbers");
+        }
+        return parsed;
+    }
+
+    private static void writeDataset(Path file, Map<String, int[]> ranges, Map<String, float[]> weights, ArenaWriter writer,
+                                     Path arenaFile) throws IOException {
+        int count = writer.count;
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(directory)) {
+            for (Map.Entry<String, int[]> range : ranges.entrySet()) {
+                output.writeUTF(range.getKey());
+                output.writeInt(range.getValue()[0]);
+                output.writeInt(range.getValue()[1]);
+                float[] tableWeights = weights.getOrDefault(range.getKey(), new float[0]);
+                output.writeInt(tableWeights.length);
+                for (float weight : tableWeights) {
+                    output.writeFloat(weight);
+                }
+            }
+        }
+        //sections start on 8 byte boundaries so the offsets can be read as aligned longs
+        long offsetsPosition = align(PREAMBLE_LENGTH + directory.size());
+        long flagsPosition = offsetsPosition + (count + 1L) * Long.BYTES;
+        int flagsLength = (count + 7) / 8;
+        long arenaPosition = align(flagsPosition + flagsLength);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(count);
+            output.writeInt(ranges.size());
+            output.writeLong(offsetsPosition);
+            output.writeLong(flagsPosition);
+            output.writeLong(arenaPosition);
+            output.writeLong(writer.position);
+            directory.writeTo(output);
+            pad(output, offsetsPosition - PREAMBLE_LENGTH - directory.size());
+            for (int i = 0; i <= count; i++) {
+                output.writeLong(writer.ends[i]);
+            }
+            output.write(Arrays.copyOf(writer.escaped.toByteArray(), flagsLength));
+            pad(output, arenaPosition - flagsPosition - flagsLength);
+            Files.copy(arenaFile, output);
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(OutputStream output, long length) throws IOException {
+        for (long i = 0; i < length; i++) {
+            output.write(0);
+        }
+    }
+
+    //appends values to the arena file, recording the end offset and escape flag of each value
+    private static final class ArenaWriter implements ValueConsumer {
+        private final OutputStream arena;
+        private long[] ends = new long[1024];
+        private final BitSet escaped = new BitSet();
+        private int count;
+        private long position;
+
+        private ArenaWriter(OutputStream arena) {
+            this.arena = arena;
+        }
+
+        @Override
+        public void accept(String value) throws IOException {
+            if (count == Integer.MAX_VALUE - 8) {
+                throw new IOException("Dataset exceeds " + count + " values");
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            long start = Dictionary.align(position, encoded.length);
+            pad(arena, start - position);
+            arena.write(encoded);
+            position = start + encoded.length;
+            if (count + 2 > ends.length) {
+                ends = Arrays.copyOf(ends, (int) Math.min(Integer.MAX_VALUE - 7L, ends.length * 2L));
+            }
+            if (Dictionary.needsEscaping(value)) {
+                escaped.set(count);
+            }
+            ends[++count] = position;
+        }
+    }
+}
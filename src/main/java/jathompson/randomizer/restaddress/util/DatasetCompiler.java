@@ -0,0 +1,46 @@
+package jathompson.randomizer.restaddress.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ * Offline build step compiling the address data files to one binary dataset file per country,
+ * <code>&lt;country code&gt;.bin</code>, which is memory-mapped when <code>randomizer.dataset.dir</code> names the
+ * output directory.
+ * </p>
+ * <p>
+ * Usage: <code>DatasetCompiler &lt;output directory&gt; [data directory]</code>. The text files are read from the data
+ * directory when specified, otherwise from <code>resources/data</code> on the classpath. Run with
+ * <code>mvn -P dataset process-classes</code> to write <code>target/dataset</code>.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public class DatasetCompiler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetCompiler.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: DatasetCompiler <output directory> [data directory]");
+            System.exit(2);
+        }
+        Path output = Path.of(args[0]);
+        Dataset.TextSource source = AddressData::openDataFile;
+        if (args.length == 2) {
+            Path directory = Path.of(args[1]);
+            source = name -> Files.newInputStream(directory.resolve(name + ".txt"));
+        }
+        for (String countryCode : AddressData.getCountryCodes()) {
+            long start = System.nanoTime();
+            Path file = output.resolve(countryCode + ".bin");
+            Dataset.compile(AddressData.getDataFileNames(countryCode), source, file);
+            LOGGER.info("Compiled {} ({} bytes) in {} ms", file, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * Immutable store for the values loaded by <code>AddressData</code>.
+ * </p>
+ * <p>
+ * All values are kept as UTF-8 in a single shared byte arena and addressed by an int reference, so a value costs its
+ * encoded length plus one offset instead of a <code>String</code>, its backing array and a list slot. Strings are only
+ * materialized by <code>get</code>; <code>writeJson</code> copies a value straight from the arena into a
+ * <code>JsonOutput</code>.
+ * </p>
+ * <p>
+ * The arena, offsets and escape flags are held in buffers, which are either on the heap (values loaded from text
+ * files with a <code>Builder</code>) or memory-mapped from a binary dataset file (see <code>Dataset</code>).
+ * The arena is split into chunks of <code>CHUNK_SIZE</code> bytes so a mapped dataset can exceed the 2 GB limit
+ * of a single buffer; a value never spans two chunks.
+ * </p>
+ * <p>
+ * Each data file is exposed as a <code>StringTable</code>, a contiguous range of references into the dictionary.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class Dictionary {
+    /**
+     * Reference used for a field without a value.
+     */
+    public static final int NO_VALUE = -1;
+
+    static final int CHUNK_BITS = 30;
+    /**
+     * Size of one arena chunk, also the maximum encoded length of a value.
+     */
+    public static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+    private final ByteBuffer[] chunks;
+    //offsets[i + 1] is the end of value i within the arena, value i starts at offsets[i] unless that would span a chunk
+    private final LongBuffer offsets;
+    //one bit per value set when the value contains characters JSON requires to be escaped
+    private final ByteBuffer escaped;
+    private final int size;
+
+    Dictionary(ByteBuffer[] chunks, LongBuffer offsets, ByteBuffer escaped) {
+        this.chunks = chunks;
+        this.offsets = offsets;
+        this.escaped = escaped;
+        this.size = offsets.limit() - 1;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Number of values in the dictionary.
+     *
+     * @return number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Materializes a value as a <code>String</code>.
+     *
+     * @param ref reference of the value
+     * @return value or <code>null</code> if ref is <code>NO_VALUE</code>
+     */
+    public String get(int ref) {
+        if (ref == NO_VALUE) {
+            return null;
+        }
+        long end = offsets.get(ref + 1);
+        long start = start(ref, end);
+        ByteBuffer chunk = chunks[(int) ((end - 1) >>> CHUNK_BITS)];
+        int position = (int) (start & (CHUNK_SIZE - 1));
+        int length = (int) (end - start);
+        if (chunk.hasArray()) {
+            return new String(chunk.array(), chunk.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        chunk.duplicate().position(position).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a value as a JSON string, copying the UTF-8 bytes from the arena unless the value needs escaping.
+     *
+     * @param ref reference of the value
+     * @param output buffer receiving the JSON string
+     */
+    public void writeJson(int ref, JsonOutput output) {
+        if ((escaped.get(ref >>> 3) & (1 << (ref & 7))) != 0) {
+            output.writeString(get(ref));
+        } else {
+            long end = offsets.get(ref + 1);
+            long start = start(ref, end);
+            output.writeQuoted(chunks[(int) ((end - 1) >>> CHUNK_BITS)], (int) (start & (CHUNK_SIZE - 1)), (int) (end - start));
+        }
+    }
+
+    /**
+     * Writes a value as a quoted CSV field, copying the UTF-8 bytes from the arena unless the value contains quotes
+     * or other characters which need escaping in JSON.
+     *
+     * @param ref reference of the value
+     * @param output buffer receiving the CSV field
+     */
+    public void writeCsv(int ref, JsonOutput output) {
+        if ((escaped.get(ref >>> 3) & (1 << (ref & 7))) != 0) {
+            output.writeCsvString(get(ref));
+        } else {
+            long end = offsets.get(ref + 1);
+            long start = start(ref, end);
+            output.writeQuoted(chunks[(int) ((end - 1) >>> CHUNK_BITS)], (int) (start & (CHUNK_SIZE - 1)), (int) (end - start));
+        }
+    }
+
+    /**
+     * Writes the UTF-8 bytes of a value as they are, e.g. into a Protocol Buffers string field.
+     *
+     * @param ref reference of the value
+     * @param output buffer receiving the bytes
+     */
+    public void writeUtf8(int ref, JsonOutput output) {
+        long end = offsets.get(ref + 1);
+        long start = start(ref, end);
+        output.writeRaw(chunks[(int) ((end - 1) >>> CHUNK_BITS)], (int) (start & (CHUNK_SIZE - 1)), (int) (end - start));
+    }
+
+    /**
+     * Adds a value to a 64-bit hash from its UTF-8 bytes, without materializing it. Equal values have equal hashes
+     * whatever their references.
+     *
+     * @param hash hash of the previous fields, <code>UniqueFilter.HASH_SEED</code> for the first
+     * @param ref reference of the value, or <code>NO_VALUE</code>
+     * @return hash including the value
+     */
+    public long hash(long hash, int ref) {
+        if (ref != NO_VALUE) {
+            long end = offsets.get(ref + 1);
+            long start = start(ref, end);
+            ByteBuffer chunk = chunks[(int) ((end - 1) >>> CHUNK_BITS)];
+            int position = (int) (start & (CHUNK_SIZE - 1));
+            int limit = position + (int) (end - start);
+            for (int i = position; i < limit; i++) {
+                hash = UniqueFilter.hash(hash, chunk.get(i));
+            }
+        }
+        return UniqueFilter.hash(hash, 0xff);
+    }
+
+    /**
+     * Returns the range of references starting at first as a table.
+     *
+     * @param first reference of the first value of the table
+     * @param size number of values in the table
+     * @return table of the values
+     */
+    public StringTable table(int first, int size) {
+        if (first < 0 || size < 0 || first + size > size()) {
+            throw new IndexOutOfBoundsException("Table " + first + "+" + size + " outside dictionary of " + size());
+        }
+        return new StringTable(this, first, size);
+    }
+
+    //values are never empty, so a value whose last byte is in a later chunk than the previous end was moved to the start of that chunk
+    private long start(int ref, long end) {
+        long start = offsets.get(ref);
+        long last = end - 1;
+        if ((start >>> CHUNK_BITS) != (last >>> CHUNK_BITS)) {
+            start = last & ~(CHUNK_SIZE - 1);
+        }
+        return start;
+    }
+
+    /**
+     * Moves a write position to the next chunk when a value of the specified length would otherwise span two chunks.
+     *
+     * @param position current end of the arena
+     * @param length encoded length of the next value
+     * @return position at which the value is written
+     */
+    static long align(long position, int length) {
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Value of " + length + " bytes exceeds the maximum of " + CHUNK_SIZE);
+        }
+        long last = position + length - 1;
+        if ((position >>> CHUNK_BITS) != (last >>> CHUNK_BITS)) {
+            return last & ~(CHUNK_SIZE - 1);
+        }
+        return position;
+    }
+
+    static boolean needsEscaping(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\' || Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends values to a heap dictionary under construction. References are assigned in the order values are added.
+     * A heap dictionary holds a single arena chunk, larger datasets have to be compiled to a binary dataset file.
+     */
+    public static final class Builder {
+        private byte[] arena = new byte[4096];
+        private long[] offsets = new long[256];
+        private final BitSet escaped = new BitSet();
+        private int size;
+
+        private Builder() {}
+
+        /**
+         * Adds a value to the dictionary.
+         *
+         * @param value non-empty value to add
+         * @return reference of the value
+         */
+        public int add(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int start = (int) offsets[size];
+            if ((long) start + encoded.length > CHUNK_SIZE) {
+                throw new IllegalStateException("Values exceed " + CHUNK_SIZE + " bytes, compile the data to a binary dataset file");
+            }
+            if (start + encoded.length > arena.length) {
+                arena = Arrays.copyOf(arena, (int) Math.min(CHUNK_SIZE, Math.max(start + encoded.length, arena.length * 2L)));
+            }
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            System.arraycopy(encoded, 0, arena, start, encoded.length);
+            offsets[size + 1] = start + encoded.length;
+            if (needsEscaping(value)) {
+                escaped.set(size);
+            }
+            return size++;
+        }
+
+        /**
+         * Reference the next added value will receive.
+         *
+         * @return number of values added so far
+         */
+        public int size() {
+            return size;
+        }
+
+        public Dictionary build() {
+            ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOf(arena, (int) offsets[size]));
+            byte[] flags = Arrays.copyOf(escaped.toByteArray(), (size + 7) / 8);
+            return new Dictionary(new ByteBuffer[]{chunk}, LongBuffer.wrap(Arrays.copyOf(offsets, size + 1)), ByteBuffer.wrap(flags));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * <p>
+ * Reusable per-thread character buffer used to assemble address fields such as house numbers, postal codes and
+ * streets combined with a house number.
+ * </p>
+ * <p>
+ * Each thread owns one buffer which is cleared by <code>get()</code>, so assembling a field only allocates the
+ * resulting <code>String</code>. Numbers are written digit by digit instead of through <code>String.format</code>.
+ * A field must be completed with <code>toString()</code> before <code>get()</code> is called again on the same thread.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class FieldBuilder {
+    private static final ThreadLocal<FieldBuilder> BUILDERS = ThreadLocal.withInitial(FieldBuilder::new);
+    private static final int INITIAL_CAPACITY = 64;
+
+    private char[] chars = new char[INITIAL_CAPACITY];
+    private int length;
+
+    private FieldBuilder() {}
+
+    /**
+     * Returns the empty buffer of the calling thread.
+     *
+     * @return cleared buffer owned by the calling thread
+     */
+    public static FieldBuilder get() {
+        FieldBuilder builder = BUILDERS.get();
+        builder.length = 0;
+        return builder;
+    }
+
+    public FieldBuilder append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public FieldBuilder append(String value) {
+        int valueLength = value.length();
+        ensureCapacity(length + valueLength);
+        value.getChars(0, valueLength, chars, length);
+        length += valueLength;
+        return this;
+    }
+
+    /**
+     * Appends a non-negative number.
+     *
+     * @param value number to append, must not be negative
+     * @return this buffer
+     */
+    public FieldBuilder append(int value) {
+        return appendDigits(value, 1);
+    }
+
+    /**
+     * Appends a non-negative number left padded with zeros to the specified width, equivalent to
+     * <code>String.format("%0&lt;width&gt;d", value)</code>.
+     *
+     * @param value number to append, must not be negative
+     * @param width minimum number of digits
+     * @return this buffer
+     */
+    public FieldBuilder appendDigits(int value, int width) {
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        if (digits < width) {
+            digits = width;
+        }
+        ensureCapacity(length + digits);
+        int end = length + digits;
+        for (int i = end - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+        return this;
+    }
+
+    /**
+     * Inserts a character at the specified position, shifting the following characters to the right.
+     *
+     * @param index position between 0 and <code>length()</code>
+     * @param c character to insert
+     * @return this buffer
+     */
+    public FieldBuilder insert(int index, char c) {
+        ensureCapacity(length + 1);
+        System.arraycopy(chars, index, chars, index + 1, length - index);
+        chars[index] = c;
+        length++;
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            char[] expanded = new char[Math.max(capacity, chars.length * 2)];
+            System.arraycopy(chars, 0, expanded, 0, length);
+            chars = expanded;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Growable byte buffer used to write JSON as UTF-8 without an intermediate <code>String</code> or
+ * <code>JsonGenerator</code>.
+ * </p>
+ * <p>
+ * Strings are escaped as required by RFC 8259 and encoded to UTF-8 character by character. Values which are written
+ * often can be encoded once with <code>encodeString</code> and copied into the buffer with <code>writeRaw</code>.
+ * </p>
+ * <p>
+ * <code>writeCsvString</code> writes quoted CSV fields as required by RFC 4180, a value without characters that need
+ * escaping in JSON can also be written as a CSV field with <code>writeQuoted</code>.
+ * </p>
+ * <p>
+ * Protocol Buffers messages are written with <code>writeUtf8</code> and the unquoted <code>writeRaw</code> methods, a
+ * length-delimited field being prefixed with its length by <code>insertVarint</code> once its content is written.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class JsonOutput {
+    /**
+     * Size at which <code>flushIfFull</code> writes the buffered bytes to the output stream.
+     */
+    public static final int FLUSH_THRESHOLD = 8192;
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private byte[] bytes;
+    private int size;
+
+    public JsonOutput(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes a value as a quoted and escaped JSON string in UTF-8.
+     *
+     * @param value value to encode
+     * @return encoded JSON string including the surrounding quotes
+     */
+    public static byte[] encodeString(String value) {
+        JsonOutput output = new JsonOutput(value.length() + 2);
+        output.writeString(value);
+        return output.toByteArray();
+    }
+
+    public void writeByte(int b) {
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    /**
+     * Copies bytes which are already valid JSON into the buffer.
+     *
+     * @param raw encoded bytes
+     */
+    public void writeRaw(byte[] raw) {
+        ensureCapacity(size + raw.length);
+        System.arraycopy(raw, 0, bytes, size, raw.length);
+        size += raw.length;
+    }
+
+    /**
+     * Copies a range of bytes into the buffer.
+     *
+     * @param raw array holding the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void writeRaw(byte[] raw, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(raw, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Copies bytes from a heap or memory-mapped buffer. The position of the source buffer is not changed.
+     *
+     * @param raw buffer holding the bytes
+     * @param offset index of the first byte in the buffer
+     * @param length number of bytes
+     */
+    public void writeRaw(ByteBuffer raw, int offset, int length) {
+        if (raw.hasArray()) {
+            writeRaw(raw.array(), raw.arrayOffset() + offset, length);
+            return;
+        }
+        ensureCapacity(size + length);
+        raw.duplicate().position(offset).get(bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a value as UTF-8, without quotes or escaping.
+     *
+     * @param value value to write
+     */
+    public void writeUtf8(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeRaw(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Inserts a base 128 varint at a position of the buffer, moving the bytes written after it. Used to prefix the
+     * content of a length-delimited field with its length, which usually takes one byte.
+     *
+     * @param position index at which the varint is inserted
+     * @param value non-negative value
+     */
+    public void insertVarint(int position, int value) {
+        int length = 1;
+        for (int rest = value >>> 7; rest != 0; rest >>>= 7) {
+            length++;
+        }
+        ensureCapacity(size + length);
+        System.arraycopy(bytes, position, bytes, position + length, size - position);
+        for (int i = 0; i < length - 1; i++) {
+            bytes[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position] = (byte) value;
+        size += length;
+    }
+
+    /**
+     * Writes UTF-8 bytes which need no escaping as a JSON string by surrounding them with quotes.
+     *
+     * @param utf8 array holding the encoded value
+     * @param offset index of the first byte of the value
+     * @param length number of bytes of the value
+     */
+    public void writeQuoted(byte[] utf8, int offset, int length) {
+        ensureCapacity(size + length + 2);
+        bytes[size++] = '"';
+        System.arraycopy(utf8, offset, bytes, size, length);
+        size += length;
+        bytes[size++] = '"';
+    }
+
+    /**
+     * Writes bytes from a heap or memory-mapped buffer between quotes without escaping, the bytes must already be
+     * valid content of a JSON string. The position of the source buffer is not changed.
+     *
+     * @param utf8 encoded string content
+     * @param offset index of the first byte in the buffer
+     * @param length number of bytes
+     */
+    public void writeQuoted(ByteBuffer utf8, int offset, int length) {
+        if (utf8.hasArray()) {
+            writeQuoted(utf8.array(), utf8.arrayOffset() + offset, length);
+            return;
+        }
+        ensureCapacity(size + length + 2);
+        bytes[size++] = '"';
+        utf8.duplicate().position(offset).get(bytes, size, length);
+        size += length;
+        bytes[size++] = '"';
+    }
+
+    /**
+     * Writes a value as a quoted and escaped JSON string in UTF-8.
+     *
+     * @param value value to write
+     */
+    public void writeString(String value) {
+        int length = value.length();
+        //worst case is 6 bytes per escaped control character, plus the quotes
+        ensureCapacity(size + length * 6 + 2);
+        byte[] buffer = bytes;
+        int position = size;
+        buffer[position++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x20) {
+                    position = writeControl(buffer, position, c);
+                } else {
+                    buffer[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    //unpaired surrogates cannot be encoded, replace them the same way String.getBytes does
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer[position++] = '"';
+        size = position;
+    }
+
+    /**
+     * Writes a value as a quoted CSV field in UTF-8, doubling the quotes it contains.
+     *
+     * @param value value to write
+     */
+    public void writeCsvString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(size + utf8.length * 2 + 2);
+        bytes[size++] = '"';
+        //bytes of multi-byte characters are never ASCII, so only the quote characters are doubled
+        for (byte b : utf8) {
+            if (b == '"') {
+                bytes[size++] = '"';
+            }
+            bytes[size++] = b;
+        }
+        bytes[size++] = '"';
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream and empties the buffer.
+     *
+     * @param outputStream destination of the buffered bytes
+     * @throws IOException if the output stream cannot be written
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(bytes, 0, size);
+        size = 0;
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream once <code>FLUSH_THRESHOLD</code> is reached,
+     * which keeps the buffer small when writing large batches.
+     *
+     * @param outputStream destination of the buffered bytes
+     * @throws IOException if the output stream cannot be written
+     */
+    public void flushIfFull(OutputStream outputStream) throws IOException {
+        if (size >= FLUSH_THRESHOLD) {
+            writeTo(outputStream);
+        }
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    //same short escapes as Jackson, \\u00XX for the remaining control characters
+    private static int writeControl(byte[] buffer, int position, char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xf];
+        }
+        return position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * <p>
+ * Source of pseudo-random numbers used to generate an <code>Address</code>.
+ * </p>
+ * <p>
+ * The default source delegates to <code>java.util.concurrent.ThreadLocalRandom</code> to avoid thread contention.
+ * A seeded source is backed by <code>java.util.SplittableRandom</code> and is derived from a seed and an index,
+ * so the address at a given index of a seeded run is always the same and any index can be generated independently
+ * of the others. This allows a large run to be partitioned across threads or nodes without coordination.
+ * </p>
+ * <p>
+ * Seeded sources are not thread-safe and should be used to generate a single address.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public interface RandomSource {
+
+    /**
+     * Returns a pseudo-random int between 0 (inclusive) and the specified bound (exclusive).
+     *
+     * @param bound the upper bound (exclusive), must be positive
+     * @return pseudo-random int
+     */
+    int nextInt(int bound);
+
+    /**
+     * Unseeded source backed by <code>ThreadLocalRandom</code>, safe to share between threads.
+     *
+     * @return thread-local random source
+     */
+    static RandomSource threadLocal() {
+        return ThreadLocalRandomSource.INSTANCE;
+    }
+
+    /**
+     * Seeded source for the address at the specified index of the run identified by seed.
+     * The same seed and index always produce the same sequence of values.
+     *
+     * @param seed seed identifying the run
+     * @param index position of the address within the run
+     * @return seeded random source
+     */
+    static RandomSource forIndex(long seed, long index) {
+        return new SeededRandomSource(seed, index);
+    }
+}
@@ -0,0 +1,35 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * <code>RandomSource</code> backed by a <code>SplittableRandom</code> whose initial state is a pure function of
+ * a seed and an index.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+final class SeededRandomSource implements RandomSource {
+    //odd constant used by SplittableRandom to step between states, spreads consecutive indexes across the state space
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final SplittableRandom random;
+
+    SeededRandomSource(long seed, long index) {
+        random = new SplittableRandom(mix64(seed + index * GOLDEN_GAMMA));
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Stafford variant 13 of the MurmurHash3 finalizer, the same mixing function used by <code>SplittableRandom</code>.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,64 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * Immutable table of states paired with their state codes. Row <code>i</code> holds the name and code of the
+ * same state, loaded from line <code>i</code> of the state name and state code data files.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class StateTable {
+    private final StringTable names;
+    private final StringTable codes;
+
+    StateTable(StringTable names, StringTable codes) {
+        if (names.size() != codes.size()) {
+            throw new IllegalArgumentException("State names and codes are not aligned: " + names.size()
+                    + " names, " + codes.size() + " codes");
+        }
+        this.names = names;
+        this.codes = codes;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Pseudo-randomly selected row, weighted by the weights of the state name data file if it has any.
+     *
+     * @param random source of pseudo-random numbers
+     * @return row between 0 (inclusive) and <code>size()</code> (exclusive)
+     */
+    public int randomRow(RandomSource random) {
+        return names.randomIndex(random);
+    }
+
+    /**
+     * Dictionary reference of the state name of a row.
+     *
+     * @param row row between 0 (inclusive) and <code>size()</code> (exclusive)
+     * @return dictionary reference of the state name
+     */
+    public int nameRef(int row) {
+        return names.ref(row);
+    }
+
+    /**
+     * Dictionary reference of the state code of a row.
+     *
+     * @param row row between 0 (inclusive) and <code>size()</code> (exclusive)
+     * @return dictionary reference of the state code
+     */
+    public int codeRef(int row) {
+        return codes.ref(row);
+    }
+
+    public StringTable getNames() {
+        return names;
+    }
+
+    public StringTable getCodes() {
+        return codes;
+    }
+}
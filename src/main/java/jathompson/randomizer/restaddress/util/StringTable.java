@@ -0,0 +1,84 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * Immutable view of the values loaded from one data file, stored as a contiguous range of a <code>Dictionary</code>.
+ * Values are sampled uniformly unless the table is weighted by an <code>AliasTable</code>.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class StringTable {
+    private final Dictionary dictionary;
+    private final int first;
+    private final int size;
+    private final AliasTable weights;
+
+    StringTable(Dictionary dictionary, int first, int size) {
+        this(dictionary, first, size, null);
+    }
+
+    private StringTable(Dictionary dictionary, int first, int size, AliasTable weights) {
+        this.dictionary = dictionary;
+        this.first = first;
+        this.size = size;
+        this.weights = weights;
+    }
+
+    /**
+     * Same values, sampled in proportion to their weights.
+     *
+     * @param weights alias table of the weights of the values
+     * @return weighted table
+     */
+    StringTable weighted(AliasTable weights) {
+        if (weights.size() != size) {
+            throw new IllegalArgumentException("Alias table of " + weights.size() + " weights for table of " + size);
+        }
+        return new StringTable(dictionary, first, size, weights);
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Dictionary reference of the value at an index of the table.
+     *
+     * @param index index between 0 (inclusive) and <code>size()</code> (exclusive)
+     * @return dictionary reference of the value
+     */
+    public int ref(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside table of " + size);
+        }
+        return first + index;
+    }
+
+    /**
+     * Index of a pseudo-randomly selected value, drawn uniformly or in proportion to the weights of the values.
+     *
+     * @param random source of pseudo-random numbers
+     * @return index of the value
+     */
+    public int randomIndex(RandomSource random) {
+        return weights == null ? random.nextInt(size) : weights.sample(random);
+    }
+
+    /**
+     * Dictionary reference of a pseudo-randomly selected value.
+     *
+     * @param random source of pseudo-random numbers
+     * @return dictionary reference of the value
+     */
+    public int randomRef(RandomSource random) {
+        return first + randomIndex(random);
+    }
+
+    public String get(int index) {
+        return dictionary.get(ref(index));
+    }
+}
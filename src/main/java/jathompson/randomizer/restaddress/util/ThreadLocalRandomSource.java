@@ -0,0 +1,18 @@
+package jathompson.randomizer.restaddress.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <code>RandomSource</code> delegating to the <code>ThreadLocalRandom</code> of the calling thread.
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+enum ThreadLocalRandomSource implements RandomSource {
+    INSTANCE;
+
+    @Override
+    public int nextInt(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+}
@@ -0,0 +1,252 @@
+package jathompson.randomizer.restaddress.util;
+
+/**
+ * <p>
+ * Set of 64-bit keys which tells whether a key was added before, used to keep the addresses of a request unique.
+ * </p>
+ * <p>
+ * Up to <code>EXACT_LIMIT</code> expected keys the filter is an exact hash set. Larger batches use a blocked Bloom
+ * filter sized for the requested false-positive rate, whose memory is bounded by <code>maxBytes</code>: every bit of a
+ * key falls within one 64 byte block, so adding a key touches one cache line. A Bloom filter never accepts a key twice
+ * but may reject a new key with the false-positive rate, which only costs generating another address.
+ * </p>
+ * <p>
+ * Not thread-safe, a filter belongs to one request.
+ * </p>
+ *
+ * @author Jennifer A Thompson
+ * @version 1.0
+ */
+public final class UniqueFilter {
+
+    /**
+     * Largest expected number of keys held in an exact set.
+     */
+    public static final int EXACT_LIMIT = 1 << 16;
+
+    /**
+     * Initial value of hashes built with <code>hash</code>.
+     */
+    public static final long HASH_SEED = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * Long.SIZE;
+    private static final int MAX_HASHES = 16;
+
+    //exact set: open addressing over non-zero keys, zero is tracked separately
+    private final long[] keys;
+    private boolean containsZero;
+    private int size;
+    //Bloom filter: blocks of BLOCK_LONGS longs
+    private final long[] bits;
+    private final long blocks;
+    private final int hashes;
+    private final double falsePositiveRate;
+
+    private UniqueFilter(int expected) {
+        keys = new long[exactCapacity(expected)];
+        bits = null;
+        blocks = 0;
+        hashes = 0;
+        falsePositiveRate = 0;
+    }
+
+    private UniqueFilter(long expected, long blocks, int hashes) {
+        keys = null;
+        bits = new long[(int) (blocks * BLOCK_LONGS)];
+        this.blocks = blocks;
+        this.hashes = hashes;
+        falsePositiveRate = rate(expected, blocks, hashes);
+    }
+
+    /**
+     * Creates a filter for the specified number of keys.
+     *
+     * @param expected number of keys which will be added
+     * @param falsePositiveRate rate at which a new key may be rejected when more than <code>EXACT_LIMIT</code> keys
+     *                          are expected
+     * @param maxBytes upper bound of the memory of a Bloom filter, the false-positive rate rises when it is reached
+     * @return empty filter
+     * @throws IllegalArgumentException if the rate is not between 0 and 1 exclusive or maxBytes is below 64
+     */
+    public static UniqueFilter create(long expected, double falsePositiveRate, long maxBytes) {
+        validate(falsePositiveRate, maxBytes);
+        if (expected <= EXACT_LIMIT) {
+            return new UniqueFilter((int) Math.max(expected, 1));
+        }
+        long blocks = blocks(expected, falsePositiveRate, maxBytes);
+        return new UniqueFilter(expected, blocks, hashes(expected, blocks));
+    }
+
+    /**
+     * Memory of the filter which <code>create</code> returns for the same arguments, without allocating it.
+     *
+     * @param expected number of keys which will be added
+     * @param falsePositiveRate requested false-positive rate
+     * @param maxBytes upper bound of the memory of a Bloom filter
+     * @return size of the keys or bits of the filter in bytes
+     * @throws IllegalArgumentException if the rate is not between 0 and 1 exclusive or maxBytes is below 64
+     */
+    public static long sizeOf(long expected, double falsePositiveRate, long maxBytes) {
+        validate(falsePositiveRate, maxBytes);
+        if (expected <= EXACT_LIMIT) {
+            return (long) exactCapacity((int) Math.max(expected, 1)) * Long.BYTES;
+        }
+        return blocks(expected, falsePositiveRate, maxBytes) * BLOCK_LONGS * Long.BYTES;
+    }
+
+    /**
+     * False-positive rate of the filter which <code>create</code> returns for the same arguments, without allocating it.
+     *
+     * @param expected number of keys which will be added
+     * @param falsePositiveRate requested false-positive rate
+     * @param maxBytes upper bound of the memory of a Bloom filter
+     * @return rate at which a new key is rejected once the expected number of keys has been added, 0 for an exact filter
+     * @throws IllegalArgumentException if the rate is not between 0 and 1 exclusive or maxBytes is below 64
+     */
+    public static double falsePositiveRate(long expected, double falsePositiveRate, long maxBytes) {
+        validate(falsePositiveRate, maxBytes);
+        if (expected <= EXACT_LIMIT) {
+            return 0;
+        }
+        long blocks = blocks(expected, falsePositiveRate, maxBytes);
+        return rate(expected, blocks, hashes(expected, blocks));
+    }
+
+    private static void validate(double falsePositiveRate, long maxBytes) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False-positive rate " + falsePositiveRate + " must be between 0 and 1");
+        }
+        if (maxBytes < BLOCK_LONGS * Long.BYTES) {
+            throw new IllegalArgumentException("Filter size " + maxBytes + " must be at least " + BLOCK_LONGS * Long.BYTES + " bytes");
+        }
+    }
+
+    private static int exactCapacity(int expected) {
+        return Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+    }
+
+    private static long blocks(long expected, double falsePositiveRate, long maxBytes) {
+        double ln2 = Math.log(2);
+        double optimalBits = -expected * Math.log(falsePositiveRate) / (ln2 * ln2);
+        long maxBlocks = Math.min(maxBytes / (BLOCK_LONGS * Long.BYTES), Integer.MAX_VALUE / BLOCK_LONGS);
+        return Math.max(1, Math.min(maxBlocks, (long) Math.ceil(optimalBits / BLOCK_BITS)));
+    }
+
+    private static int hashes(long expected, long blocks) {
+        return (int) Math.max(1, Math.min(MAX_HASHES, Math.round(blocks * (double) BLOCK_BITS / expected * Math.log(2))));
+    }
+
+    private static double rate(long expected, long blocks, int hashes) {
+        double m = blocks * (double) BLOCK_BITS;
+        return Math.pow(1 - Math.exp(-hashes * expected / m), hashes);
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key 64-bit hash of the value
+     * @return true if the key was not added before, false if it was, or for a Bloom filter possibly was
+     */
+    public boolean add(long key) {
+        return keys != null ? addExact(key) : addBloom(mix(key));
+    }
+
+    /**
+     * Expected rate at which a new key is rejected once the expected number of keys has been added.
+     *
+     * @return false-positive rate, 0 for an exact filter
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public boolean isExact() {
+        return keys != null;
+    }
+
+    /**
+     * Memory of the filter.
+     *
+     * @return size of the keys or bits in bytes
+     */
+    public long getBytes() {
+        return (long) (keys != null ? keys.length : bits.length) * Long.BYTES;
+    }
+
+    /**
+     * Adds a string to a 64-bit FNV-1a hash.
+     *
+     * @param hash hash of the previous fields, <code>HASH_SEED</code> for the first
+     * @param value field value, may be null
+     * @return hash including the value
+     */
+    public static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        //field separator, so that moving characters between fields changes the hash
+        return (hash ^ 0xff) * FNV_PRIME;
+    }
+
+    static long hash(long hash, int b) {
+        return (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+
+    private boolean addExact(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int index = (int) mix(key) & mask;
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        if (++size * 2 > keys.length) {
+            throw new IllegalStateException("Unique filter holds more than its expected " + keys.length / 2 + " keys");
+        }
+        return true;
+    }
+
+    private boolean addBloom(long hash) {
+        int block = (int) Long.remainderUnsigned(hash, blocks) * BLOCK_LONGS;
+        //each bit position takes 9 bits of the hash, the hash is remixed once used up
+        long bitHash = mix(hash + 0x9e3779b97f4a7c15L);
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            int slice = i % 7;
+            if (i > 0 && slice == 0) {
+                bitHash = mix(bitHash);
+            }
+            int bit = (int) (bitHash >>> (slice * 9)) & (BLOCK_BITS - 1);
+            long mask = 1L << bit;
+            int word = block + (bit >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    //murmur3 finalizer
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,96 @@
+package jathompson.randomizer.restaddress;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jathompson.randomizer.restaddress.util.AddressData;
+import org.junit.jupiter.api.AfterAll;
+import jathompson.randomizer.restaddress.util.RingBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test class to verify the address pool serves the enabled countries from the configured dataset
+ */
+@SpringBootTest(properties = {"randomizer.pool.enabled=true", "randomizer.pool.size=16", "randomizer.pool.refill-threshold=8",
+		"randomizer.countries=USA", "randomizer.diagnostics.trace-header.enabled=true"})
+@AutoConfigureMockMvc
+@ExtendWith(OutputCaptureExtension.class)
+@DirtiesContext
+class AddressPoolTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private AddressPool pool;
+
+	@DynamicPropertySource
+	static void datasetDirectory(DynamicPropertyRegistry registry) throws IOException {
+		Path directory = Files.createTempDirectory("pool-dataset");
+		directory.toFile().deleteOnExit();
+		Path cities = Files.writeString(directory.resolve("CityNames_EN.txt"), "Poolville\n");
+		cities.toFile().deleteOnExit();
+		registry.add(AddressData.DATASET_DIR_PROPERTY, directory::toString);
+	}
+
+	//the settings are static, restore them for the application contexts of the other test classes
+	@AfterAll
+	static void restoreSettings() {
+		CountryRegistry.setEnabledCountries(List.of());
+		AddressData.configure(null, false);
+	}
+
+	@Test
+	public void pooledAddressesShouldUseConfiguredCountriesAndDataset() throws Exception {
+		assertEquals(Set.of(AddressData.USA, AddressMetrics.RANDOM_COUNTRY), pool.getBuffers().keySet());
+		for (String country : new String[]{AddressData.USA, AddressData.DEFAULT}) {
+			byte[] json = null;
+			for (int i = 0; i < 500 && json == null; i++) {
+				Thread.sleep(10);
+				json = pool.poll(country);
+			}
+			JsonNode address = objectMapper.readTree(json);
+			assertEquals(AddressData.USA, address.get("countryCode").asText());
+			assertEquals("Poolville", address.get("city").asText());
+		}
+		this.mockMvc.perform(get("/randomizer/address?country=MEX")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void tracedRequestShouldNotBeServedFromPool(CapturedOutput output) throws Exception {
+		RingBuffer<byte[]> buffer = pool.getBuffers().get(AddressData.USA);
+		for (int i = 0; i < 500 && buffer.size() == 0; i++) {
+			Thread.sleep(10);
+		}
+		int pooled = buffer.size();
+		this.mockMvc.perform(get("/randomizer/address?country=USA").header(AddressDiagnostics.TRACE_HEADER, "pool-trace"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(AddressDiagnostics.TRACE_HEADER, "pool-trace"));
+		assertTrue(pooled > 0);
+		assertTrue(output.getOut().contains("Traced address of pool-trace is: "));
+	}
+}
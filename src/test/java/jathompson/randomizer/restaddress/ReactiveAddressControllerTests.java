@@ -0,0 +1,129 @@
+package jathompson.randomizer.restaddress;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class to verify the REST calls when the application runs reactive
+ */
+@SpringBootTest(properties = {"spring.main.web-application-type=reactive", "randomizer.diagnostics.trace-header.enabled=true"})
+@AutoConfigureWebTestClient
+@ExtendWith(OutputCaptureExtension.class)
+class ReactiveAddressControllerTests {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	public void reactiveStreamShouldReturnJsonArray() {
+		this.webTestClient.get().uri("/randomizer/addresses/stream?country=CAN&count=150").exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+				.expectBody().jsonPath("$").value(hasSize(150)).jsonPath("$[*].countryCode").value(everyItem(matchesPattern("CAN")));
+	}
+
+	@Test
+	public void reactiveStreamShouldMatchSeededBatch() {
+		String batch = this.webTestClient.get().uri("/randomizer/addresses?seed=5&offset=3&count=70").exchange()
+				.expectStatus().isOk().expectBody(String.class).returnResult().getResponseBody();
+		String stream = this.webTestClient.get().uri("/randomizer/addresses/stream?seed=5&offset=3&count=70")
+				.accept(AddressController.APPLICATION_NDJSON).exchange()
+				.expectStatus().isOk().expectBody(String.class).returnResult().getResponseBody();
+		assertEquals(batch, "[" + stream.trim().replace('\n', ',') + "]");
+	}
+
+	@Test
+	public void reactiveBatchShouldBeWrittenInChunks() throws Exception {
+		List<DataBuffer> buffers = this.webTestClient.get().uri("/randomizer/addresses?country=USA&count=20000").exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+				.returnResult(DataBuffer.class).getResponseBody().collectList().block();
+		assertTrue(buffers.size() > 1);
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (DataBuffer buffer : buffers) {
+			byte[] bytes = new byte[buffer.readableByteCount()];
+			buffer.read(bytes);
+			body.write(bytes);
+		}
+		JsonNode addresses = objectMapper.readTree(body.toByteArray());
+		assertEquals(20000, addresses.size());
+		assertEquals("USA", addresses.get(19999).get("countryCode").asText());
+	}
+
+	@Test
+	public void reactiveBulkRequestShouldNotRunOnEventLoop() {
+		Logger logger = (Logger) LoggerFactory.getLogger(AddressFactory.class);
+		ListAppender<ILoggingEvent> appender = new ListAppender<>();
+		appender.start();
+		logger.addAppender(appender);
+		LoggingSystem logging = LoggingSystem.get(getClass().getClassLoader());
+		logging.setLogLevel(AddressFactory.class.getName(), LogLevel.DEBUG);
+		try {
+			this.webTestClient.get().uri("/randomizer/addresses?country=MEX&count=5000").exchange()
+					.expectStatus().isOk();
+			ILoggingEvent request = appender.list.stream()
+					.filter(event -> event.getFormattedMessage().equals("Country is MEX, count is 5000")).findFirst().orElseThrow();
+			assertTrue(request.getThreadName().startsWith("boundedElastic-"), request.getThreadName());
+		} finally {
+			logging.setLogLevel(AddressFactory.class.getName(), null);
+			logger.detachAppender(appender);
+		}
+	}
+
+	@Test
+	public void reactiveRequestsShouldBeTraced(CapturedOutput output) {
+		this.webTestClient.get().uri("/randomizer/address?country=CAN").header(AddressDiagnostics.TRACE_HEADER, "reactive-single")
+				.exchange().expectStatus().isOk().expectHeader().valueEquals(AddressDiagnostics.TRACE_HEADER, "reactive-single");
+		this.webTestClient.get().uri("/randomizer/addresses?country=CAN&count=3").header(AddressDiagnostics.TRACE_HEADER, "reactive-bulk")
+				.exchange().expectStatus().isOk().expectHeader().valueEquals(AddressDiagnostics.TRACE_HEADER, "reactive-bulk");
+		this.webTestClient.get().uri("/randomizer/addresses/stream?country=CAN&count=3").header(AddressDiagnostics.TRACE_HEADER, "reactive-stream")
+				.exchange().expectStatus().isOk().expectHeader().valueEquals(AddressDiagnostics.TRACE_HEADER, "reactive-stream")
+				.expectBody().jsonPath("$").value(hasSize(3));
+		this.webTestClient.get().uri("/randomizer/address?country=CAN").exchange().expectStatus().isOk()
+				.expectHeader().doesNotExist(AddressDiagnostics.TRACE_HEADER);
+		assertEquals(1, count(output.getOut(), "Traced address of reactive-single is: "));
+		assertEquals(3, count(output.getOut(), "Traced address of reactive-bulk is: "));
+		assertEquals(3, count(output.getOut(), "Traced address of reactive-stream is: "));
+	}
+
+	@Test
+	public void reactiveStreamWithInvalidCountryShouldReturnNotFoundError() {
+		this.webTestClient.get().uri("/randomizer/addresses/stream?country=XYZ").exchange().expectStatus().isNotFound();
+	}
+
+	private static int count(String text, String fragment) {
+		int count = 0;
+		for (int index = text.indexOf(fragment); index >= 0; index = text.indexOf(fragment, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+}
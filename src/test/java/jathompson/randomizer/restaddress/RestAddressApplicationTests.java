@@ -1,26 +1,114 @@
 package jathompson.randomizer.restaddress;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jathompson.randomizer.restaddress.util.AddressData;
+import jathompson.randomizer.restaddress.util.AliasTable;
+import jathompson.randomizer.restaddress.util.CountryData;
+import jathompson.randomizer.restaddress.util.Dataset;
+import jathompson.randomizer.restaddress.util.JsonOutput;
+import jathompson.randomizer.restaddress.util.RandomSource;
+import jathompson.randomizer.restaddress.util.RingBuffer;
+import jathompson.randomizer.restaddress.util.UniqueFilter;
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.not;
 
 /**
  * Test class to verify basic functionality of REST call <code>/randomizer/address</code>
  */
-@SpringBootTest
+@SpringBootTest(properties = "randomizer.diagnostics.trace-header.enabled=true")
 @AutoConfigureMockMvc
+@AutoConfigureObservability
+@ExtendWith(OutputCaptureExtension.class)
 class RestAddressApplicationTests {
 
 	@Autowired
 	private MockMvc mockMvc;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private AddressRequestValidator validator;
+
+	@Autowired
+	private BinaryObjectMappers binaryMappers;
+
 
 	@Test
 	public void noParamAddressShouldReturnRandomAddress() throws Exception {
@@ -55,4 +143,817 @@ class RestAddressApplicationTests {
 	public void invalidCountryShouldReturnNotFoundError() throws Exception {
 		this.mockMvc.perform(get("/randomizer/address?country=123")).andDo(print()).andExpect(status().isNotFound());
 	}
+
+	@Test
+	public void nonLetterCountryShouldReturnNotFoundError() throws Exception {
+		this.mockMvc.perform(get("/randomizer/address?country=U[A")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void bulkAddressShouldReturnRequestedCount() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?country=usa&count=25")).andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(25)))
+				.andExpect(jsonPath("$[24].countryCode").value("USA"));
+	}
+
+	@Test
+	public void bulkAddressWithoutCountryShouldReturnMixedCountries() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?count=50")).andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(50)));
+	}
+
+	@Test
+	public void bulkAddressOverMaxCountShouldReturnBadRequest() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?count=" + (AddressConstants.MAX_BULK_COUNT + 1)))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void bulkAddressWithInvalidCountryShouldReturnNotFoundError() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?country=123&count=5")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void streamShouldReturnJsonArray() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses/stream?country=NLD&count=100"))
+				.andExpect(request().asyncStarted()).andReturn();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/json"))
+				.andExpect(jsonPath("$", hasSize(100)))
+				.andExpect(jsonPath("$[99].countryCode").value("NLD"));
+	}
+
+	@Test
+	public void streamShouldReturnNewlineDelimitedJson() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses/stream?count=100").header("Accept", "application/x-ndjson"))
+				.andExpect(request().asyncStarted()).andReturn();
+		String body = this.mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(100, body.split("\n").length);
+	}
+
+	@Test
+	public void seededAddressShouldBeReproducible() throws Exception {
+		String first = this.mockMvc.perform(get("/randomizer/address?seed=42")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		String second = this.mockMvc.perform(get("/randomizer/address?seed=42")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void seededBatchWithOffsetShouldMatchSliceOfLargerBatch() throws Exception {
+		String whole = this.mockMvc.perform(get("/randomizer/addresses?seed=7&count=20")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		String head = this.mockMvc.perform(get("/randomizer/addresses?seed=7&count=10")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		String tail = this.mockMvc.perform(get("/randomizer/addresses?seed=7&offset=10&count=10")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(whole, head.substring(0, head.length() - 1) + "," + tail.substring(1));
+	}
+
+	@Test
+	public void negativeOffsetShouldReturnBadRequest() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?seed=7&offset=-1")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void indexedAddressShouldMatchSeededBatch() throws Exception {
+		String indexed = this.mockMvc.perform(get("/randomizer/address/7/4000000?country=CAN")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.countryCode").value("CAN"))
+				.andReturn().getResponse().getContentAsString();
+		String batch = this.mockMvc.perform(get("/randomizer/addresses?country=CAN&seed=7&offset=4000000&count=1")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertEquals("[" + indexed + "]", batch);
+	}
+
+	@Test
+	public void houseAndPostalCodesShouldMatchCountryFormat() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?country=USA&count=200")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].postalCode", everyItem(matchesPattern("\\d{5}"))));
+		this.mockMvc.perform(get("/randomizer/addresses?country=CAN&count=200")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].postalCode", everyItem(matchesPattern("[A-Za-z]\\d[A-Za-z] \\d[A-Za-z]\\d"))));
+		this.mockMvc.perform(get("/randomizer/addresses?country=NLD&count=200")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].postalCode", everyItem(matchesPattern("\\d{4} [A-Za-z]{2}"))));
+		this.mockMvc.perform(get("/randomizer/addresses?count=5000")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].house", everyItem(matchesPattern("\\d+(-\\d+)?[A-Za-z]?"))));
+	}
+
+	@Test
+	public void quebecAddressesShouldUseFrenchData() {
+		CountryData data = AddressData.getCountryData(AddressData.CAN);
+		Set<Integer> frenchCities = new HashSet<>();
+		Set<Integer> englishCities = new HashSet<>();
+		for (int i = 0; i < data.getCities(AddressData.FR).size(); i++) {
+			frenchCities.add(data.getCities(AddressData.FR).ref(i));
+		}
+		for (int i = 0; i < data.getCities(AddressData.EN).size(); i++) {
+			englishCities.add(data.getCities(AddressData.EN).ref(i));
+		}
+		int quebec = 0;
+		for (int i = 0; i < 2000; i++) {
+			Address address = AddressFactory.createAddress(AddressData.CAN, RandomSource.forIndex(11, i));
+			boolean french = "QC".equalsIgnoreCase(address.getStateCode()) || "QUEBEC".equalsIgnoreCase(address.getState());
+			assertTrue((french ? frenchCities : englishCities).contains(address.cityRef), address.getCity());
+			quebec += french ? 1 : 0;
+		}
+		assertTrue(quebec > 0);
+	}
+
+	@Test
+	public void directWriterShouldMatchJacksonSerialization() throws Exception {
+		byte[] expected = objectMapper.writeValueAsBytes(AddressFactory.createAddresses("NO_VALUE", 11, 0, 2000));
+		this.mockMvc.perform(get("/randomizer/addresses?seed=11&count=2000")).andExpect(status().isOk())
+				.andExpect(content().bytes(expected));
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses/stream?seed=11&count=2000"))
+				.andExpect(request().asyncStarted()).andReturn();
+		this.mockMvc.perform(asyncDispatch(result)).andExpect(content().bytes(expected));
+	}
+
+	@Test
+	public void batchShouldWriteSameRecordsAsAddresses() {
+		AddressBatch batch = new AddressBatch(1);
+		for (int round = 0; round < 2; round++) {
+			batch.clear();
+			AddressFactory.appendAddresses(batch, "NO_VALUE", 5 + round, 0, 3000);
+			assertEquals(3000, batch.size());
+			for (int row = 0; row < batch.size(); row++) {
+				Address address = AddressFactory.createAddress("NO_VALUE", RandomSource.forIndex(5 + round, row));
+				JsonOutput expected = new JsonOutput(256);
+				JsonOutput actual = new JsonOutput(256);
+				AddressJsonWriter.write(address, expected);
+				AddressJsonWriter.write(batch, row, actual);
+				AddressCsvWriter.write(address, expected);
+				AddressCsvWriter.write(batch, row, actual);
+				assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+				assertEquals(address.getStreet(), batch.get(row).getStreet());
+			}
+		}
+	}
+
+	@Test
+	public void parallelBatchShouldMatchSequentialBatch() throws Exception {
+		int threshold = AddressFactory.getParallelThreshold();
+		try {
+			AddressFactory.setParallelThreshold(0);
+			byte[] expected = objectMapper.writeValueAsBytes(AddressFactory.createAddresses("NO_VALUE", 13, 100, 9000));
+			AddressFactory.setParallelThreshold(1000);
+			this.mockMvc.perform(get("/randomizer/addresses?seed=13&offset=100&count=9000")).andExpect(status().isOk())
+					.andExpect(content().bytes(expected));
+			this.mockMvc.perform(get("/randomizer/addresses?country=CAN&count=9000")).andExpect(status().isOk())
+					.andExpect(jsonPath("$", hasSize(9000)))
+					.andExpect(jsonPath("$[*].countryCode", everyItem(is("CAN"))));
+		} finally {
+			AddressFactory.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void dataShouldLoadOnFirstRequestFromCommonPoolThread() throws Exception {
+		//other settings unload every country, the data is then loaded again by the first request
+		AddressData.configure(null, true);
+		AddressData.configure(null, false);
+		try {
+			//executed rather than submitted, a thread waiting for a submitted task may run it itself
+			CompletableFuture<Address> created = new CompletableFuture<>();
+			ForkJoinPool.commonPool().execute(() -> {
+				//a context class loader which cannot see the data files, as the one of a pool thread in the packaged jar
+				ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+				Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[0], null));
+				try {
+					assertTrue(Thread.currentThread() instanceof ForkJoinWorkerThread);
+					created.complete(AddressFactory.createAddress(AddressData.MEX));
+				} catch (Throwable throwable) {
+					created.completeExceptionally(throwable);
+				} finally {
+					Thread.currentThread().setContextClassLoader(contextClassLoader);
+				}
+			});
+			Address address = created.get(30, TimeUnit.SECONDS);
+			assertEquals(AddressData.MEX, address.getCountryCode());
+			assertTrue(AddressData.isLoaded(AddressData.MEX));
+		} finally {
+			AddressData.configure(null, false);
+		}
+	}
+
+	@Test
+	public void mappedDatasetShouldMatchTextDataset(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("CAN.bin");
+		Dataset.compile(AddressData.getDataFileNames(AddressData.CAN), AddressData::openDataFile, file);
+		Dataset text = Dataset.fromText(AddressData.getDataFileNames(AddressData.CAN), AddressData::openDataFile);
+		Dataset mapped = Dataset.map(file);
+		assertEquals(text.getTableNames(), mapped.getTableNames());
+		assertEquals(text.getDictionary().size(), mapped.getDictionary().size());
+		JsonOutput textJson = new JsonOutput(64);
+		JsonOutput mappedJson = new JsonOutput(64);
+		for (int ref = 0; ref < text.getDictionary().size(); ref++) {
+			assertEquals(text.getDictionary().get(ref), mapped.getDictionary().get(ref));
+			text.getDictionary().writeJson(ref, textJson);
+			mapped.getDictionary().writeJson(ref, mappedJson);
+		}
+		assertArrayEquals(textJson.toByteArray(), mappedJson.toByteArray());
+	}
+
+	@Test
+	public void disabledCountryShouldNotBeSupported() throws Exception {
+		try {
+			CountryRegistry.setEnabledCountries(List.of("usa", "NLD"));
+			this.mockMvc.perform(get("/randomizer/address?country=MEX")).andExpect(status().isNotFound());
+			this.mockMvc.perform(get("/randomizer/addresses?count=200")).andExpect(status().isOk())
+					.andExpect(jsonPath("$[*].countryCode", everyItem(matchesPattern("USA|NLD"))));
+		} finally {
+			CountryRegistry.setEnabledCountries(List.of());
+		}
+		this.mockMvc.perform(get("/randomizer/address?country=MEX")).andExpect(status().isOk());
+	}
+
+	@Test
+	public void reloadShouldPublishNewDataset(@TempDir Path directory) throws Exception {
+		Address before = AddressFactory.createAddress(AddressData.USA);
+		String city = before.getCity();
+		Files.writeString(directory.resolve("CityNames_EN.txt"), "Reloadville\n");
+		try {
+			AddressData.setDatasetDirectory(directory.toString());
+			AddressData.reload(AddressData.USA);
+			this.mockMvc.perform(get("/randomizer/addresses?country=USA&count=50")).andExpect(status().isOk())
+					.andExpect(jsonPath("$[*].city", everyItem(matchesPattern("Reloadville"))));
+			//addresses generated from the previous snapshot still resolve against it
+			assertEquals(city, before.getCity());
+		} finally {
+			AddressData.setDatasetDirectory(null);
+			AddressData.reload(AddressData.USA);
+		}
+		this.mockMvc.perform(get("/randomizer/address?country=USA&seed=1")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.city").value(not("Reloadville")));
+	}
+
+	@Test
+	public void reloadAllShouldReloadEachCountryIndependently(@TempDir Path directory) throws Exception {
+		try {
+			AddressData.configure(directory.toString(), false);
+			AddressData.getCountryData(AddressData.NETHERLANDS);
+			AddressData.getCountryData(AddressData.USA);
+			Files.writeString(directory.resolve("NLD.bin"), "not a dataset");
+			ResponseEntity<Map<String, DatasetController.Reload>> response = new DatasetController().reloadDatasets(AddressData.DEFAULT);
+			assertEquals(HttpStatus.MULTI_STATUS, response.getStatusCode());
+			assertNull(response.getBody().get(AddressData.NETHERLANDS).getValues());
+			assertTrue(response.getBody().get(AddressData.NETHERLANDS).getError().contains("NLD.bin"));
+			assertTrue(response.getBody().get(AddressData.USA).getValues() > 0);
+			this.mockMvc.perform(get("/randomizer/address?country=NLD")).andExpect(status().isOk());
+		} finally {
+			AddressData.configure(null, false);
+		}
+	}
+
+	@Test
+	public void failedCountryShouldBeRetriedAfterDelay(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("NLD.bin");
+		Files.writeString(file, "not a dataset");
+		try {
+			AddressData.configure(directory.toString(), false);
+			this.mockMvc.perform(get("/randomizer/address?country=NLD")).andExpect(status().isInternalServerError());
+			Files.delete(file);
+			//the failure is kept until the retry delay has passed
+			this.mockMvc.perform(get("/randomizer/address?country=NLD")).andExpect(status().isInternalServerError());
+			this.mockMvc.perform(get("/randomizer/address?country=USA")).andExpect(status().isOk());
+			Thread.sleep(AddressData.MIN_RETRY_DELAY_MILLIS + 100);
+			this.mockMvc.perform(get("/randomizer/address?country=NLD")).andExpect(status().isOk());
+		} finally {
+			AddressData.configure(null, false);
+		}
+	}
+
+	@Test
+	public void metricsShouldCountRequestsPerCountry() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?country=can&count=5")).andExpect(status().isOk());
+		this.mockMvc.perform(get("/randomizer/address?country=XYZ")).andExpect(status().isNotFound());
+		this.mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("randomizer_requests_seconds_count{country=\"CAN\",endpoint=\"addresses\",}")))
+				.andExpect(content().string(containsString("randomizer_stage_seconds_count{endpoint=\"addresses\",stage=\"serialization\",}")))
+				.andExpect(content().string(containsString("randomizer_rejected_countries_total")));
+	}
+
+	@Test
+	public void indexedSerializationShouldHaveItsOwnSeries() throws Exception {
+		this.mockMvc.perform(get("/randomizer/address/3/7?country=USA")).andExpect(status().isOk());
+		this.mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("randomizer_stage_seconds_count{endpoint=\"indexed\",stage=\"serialization\",}")))
+				.andExpect(content().string(not(containsString("randomizer_stage_seconds_count{endpoint=\"indexed\",stage=\"serialization\",} 0.0"))));
+	}
+
+	@Test
+	public void traceHeaderShouldBeEchoedOrGenerated(CapturedOutput output) throws Exception {
+		int mark = output.getOut().length();
+		this.mockMvc.perform(get("/randomizer/addresses?country=USA&count=3").header(AddressDiagnostics.TRACE_HEADER, "abc-123"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(AddressDiagnostics.TRACE_HEADER, "abc-123"));
+		assertEquals(3, count(output.getOut().substring(mark), "Traced address of abc-123 is: "));
+		this.mockMvc.perform(get("/randomizer/address").header(AddressDiagnostics.TRACE_HEADER, ""))
+				.andExpect(status().isOk())
+				.andExpect(header().string(AddressDiagnostics.TRACE_HEADER, matchesPattern("[0-9a-f-]{36}")));
+		mark = output.getOut().length();
+		this.mockMvc.perform(get("/randomizer/address")).andExpect(status().isOk())
+				.andExpect(header().doesNotExist(AddressDiagnostics.TRACE_HEADER));
+		assertEquals(0, count(output.getOut().substring(mark), "Traced address"));
+	}
+
+	@Test
+	public void tracedParallelBatchShouldLogEveryAddress(CapturedOutput output) throws Exception {
+		int threshold = AddressFactory.getParallelThreshold();
+		try {
+			AddressFactory.setParallelThreshold(4096);
+			int mark = output.getOut().length();
+			this.mockMvc.perform(get("/randomizer/addresses?country=MEX&count=4096").header(AddressDiagnostics.TRACE_HEADER, "parallel-1"))
+					.andExpect(status().isOk())
+					.andExpect(header().string(AddressDiagnostics.TRACE_HEADER, "parallel-1"));
+			assertEquals(4096, count(output.getOut().substring(mark), "Traced address of parallel-1 is: "));
+		} finally {
+			AddressFactory.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void addressesShouldBeSampledAtConfiguredRate(CapturedOutput output) {
+		LoggingSystem logging = LoggingSystem.get(getClass().getClassLoader());
+		logging.setLogLevel(AddressDiagnostics.class.getName(), LogLevel.DEBUG);
+		try {
+			AddressDiagnostics.configure(1, true);
+			int mark = output.getOut().length();
+			for (int i = 0; i < 20; i++) {
+				AddressFactory.createAddress(AddressData.NETHERLANDS);
+			}
+			assertEquals(20, count(output.getOut().substring(mark), "Sampled address is: "));
+			AddressDiagnostics.configure(0, true);
+			mark = output.getOut().length();
+			for (int i = 0; i < 20; i++) {
+				AddressFactory.createAddress(AddressData.NETHERLANDS);
+			}
+			assertEquals(0, count(output.getOut().substring(mark), "Sampled address is: "));
+		} finally {
+			AddressDiagnostics.configure(1000, true);
+			logging.setLogLevel(AddressDiagnostics.class.getName(), null);
+		}
+	}
+
+	private static int count(String text, String fragment) {
+		int count = 0;
+		for (int index = text.indexOf(fragment); index >= 0; index = text.indexOf(fragment, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void ringBufferShouldBeFifoAndBounded() {
+		RingBuffer<Integer> buffer = new RingBuffer<>(3);
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		assertEquals(0, buffer.poll());
+		assertTrue(buffer.offer(4));
+		for (int i = 1; i <= 4; i++) {
+			assertEquals(i, buffer.poll());
+		}
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void ringBufferShouldNotLoseOrDuplicateConcurrentElements() throws Exception {
+		RingBuffer<Integer> buffer = new RingBuffer<>(64);
+		int threads = 4;
+		int perProducer = 50_000;
+		int total = threads * perProducer;
+		AtomicIntegerArray seen = new AtomicIntegerArray(total);
+		AtomicInteger consumed = new AtomicInteger();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int first = t * perProducer;
+			workers.add(new Thread(() -> {
+				for (int value = first; value < first + perProducer; value++) {
+					while (!buffer.offer(value)) {
+						Thread.yield();
+					}
+				}
+			}));
+			workers.add(new Thread(() -> {
+				while (consumed.get() < total) {
+					Integer value = buffer.poll();
+					if (value == null) {
+						Thread.yield();
+					} else {
+						seen.incrementAndGet(value);
+						consumed.incrementAndGet();
+					}
+				}
+			}));
+		}
+		workers.forEach(Thread::start);
+		for (Thread worker : workers) {
+			worker.join(60_000);
+			assertFalse(worker.isAlive());
+		}
+		assertEquals(total, consumed.get());
+		for (int value = 0; value < total; value++) {
+			assertEquals(1, seen.get(value), "value " + value);
+		}
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void pooledAddressShouldMatchRequestedCountry() throws Exception {
+		AddressPool pool = new AddressPool(16, 8, 1, AddressMetrics.DISABLED, new DatasetSettings(List.of(), "", false));
+		try {
+			byte[] json = null;
+			for (int i = 0; i < 500 && json == null; i++) {
+				Thread.sleep(10);
+				json = pool.poll("can");
+			}
+			assertEquals(AddressData.CAN, objectMapper.readTree(json).get("countryCode").asText());
+		} finally {
+			pool.destroy();
+		}
+	}
+
+	@Test
+	public void uniqueBatchShouldNotRepeatAddresses() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses?country=NLD&count=10000&seed=3&unique=true"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(UniqueFilterFactory.FALSE_POSITIVE_RATE_HEADER, "0.0")).andReturn();
+		Set<String> keys = new HashSet<>();
+		for (JsonNode address : objectMapper.readTree(result.getResponse().getContentAsByteArray())) {
+			assertTrue(keys.add(address.get("street").asText() + '|' + address.get("house").asText() + '|' + address.get("postalCode").asText()));
+		}
+		this.mockMvc.perform(get("/randomizer/addresses?country=NLD&count=10000&seed=3&unique=true"))
+				.andExpect(content().bytes(result.getResponse().getContentAsByteArray()));
+	}
+
+	@Test
+	public void bloomFilterShouldRejectRepeatedKeys() {
+		UniqueFilter filter = UniqueFilter.create(200_000, 0.01, 1 << 20);
+		assertFalse(filter.isExact());
+		int rejected = 0;
+		for (long key = 0; key < 200_000; key++) {
+			if (!filter.add(key * 0x9e3779b97f4a7c15L)) {
+				rejected++;
+			}
+		}
+		assertTrue(rejected < 200_000 * 0.03, "rejected " + rejected);
+		for (long key = 0; key < 1000; key++) {
+			assertFalse(filter.add(key * 0x9e3779b97f4a7c15L));
+		}
+	}
+
+	@Test
+	public void uniqueRequestTooLargeForFilterShouldBeRejected() {
+		UniqueFilterFactory uniqueFilters = new UniqueFilterFactory(0.001, 1 << 20, 1 << 22);
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> uniqueFilters.create(true, 10_000_000));
+		assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+		assertFalse(uniqueFilters.create(true, 1_000_000).isExact());
+		assertNull(uniqueFilters.create(false, 10_000_000));
+	}
+
+	@Test
+	public void concurrentUniqueFiltersShouldShareMemoryBudget() {
+		//each Bloom filter of a million addresses takes the maximum of 1 MB
+		UniqueFilterFactory uniqueFilters = new UniqueFilterFactory(0.001, 1 << 20, (1 << 21) + (1 << 19));
+		UniqueFilter first = uniqueFilters.create(true, 1_000_000);
+		UniqueFilter second = uniqueFilters.create(true, 1_000_000);
+		assertEquals(1 << 20, second.getBytes());
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> uniqueFilters.create(true, 1_000_000));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatusCode());
+		//an exact filter of 10000 addresses still fits the remaining 512 KB
+		uniqueFilters.release(uniqueFilters.create(true, 10_000));
+		uniqueFilters.release(first);
+		uniqueFilters.release(uniqueFilters.create(true, 1_000_000));
+		uniqueFilters.release(second);
+		assertThrows(IllegalArgumentException.class, () -> new UniqueFilterFactory(0.001, 1 << 20, 1 << 19));
+	}
+
+	@Test
+	public void exhaustedUniqueStreamShouldEndDocumentAndRecordMetric() throws Exception {
+		//a single 64 byte block saturates after a few thousand addresses, after which no new address is accepted
+		UniqueFilterFactory saturating = new UniqueFilterFactory(0.001, 1 << 20, 1 << 22) {
+			@Override
+			public UniqueFilter create(boolean unique, int count) {
+				return UniqueFilter.create(count, 0.5, 64);
+			}
+		};
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AddressStreamController controller = new AddressStreamController(new AddressMetrics(registry), validator, saturating, binaryMappers);
+		ResponseEntity<StreamingResponseBody> response = controller.streamRandomAddresses(AddressData.NETHERLANDS, 100_000, 4L, 0, true,
+				null, null, null, MediaType.APPLICATION_JSON_VALUE);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		response.getBody().writeTo(output);
+		JsonNode addresses = objectMapper.readTree(output.toByteArray());
+		assertTrue(addresses.isArray());
+		assertTrue(addresses.size() > 0 && addresses.size() < 100_000, "size " + addresses.size());
+		assertEquals(addresses.size(), registry.get("randomizer.addresses").tag("country", AddressData.NETHERLANDS).counter().count());
+		assertEquals(1, registry.get("randomizer.requests").tags("endpoint", "stream", "country", AddressData.NETHERLANDS).timer().count());
+	}
+
+	@Test
+	public void dataFailingMidStreamShouldAbortStream(@TempDir Path directory) throws Exception {
+		Files.writeString(directory.resolve("NLD.bin"), "not a dataset");
+		AddressStreamController controller = new AddressStreamController(AddressMetrics.DISABLED, validator,
+				new UniqueFilterFactory(0.001, 1 << 20, 1 << 22), binaryMappers);
+		ResponseEntity<StreamingResponseBody> response = controller.streamRandomAddresses(AddressData.NETHERLANDS, 100_000, 4L, 0, false,
+				null, null, null, MediaType.APPLICATION_JSON_VALUE);
+		//the data is unloaded and replaced by an invalid dataset once the first block has been sent
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] bytes, int offset, int length) {
+				if (size() == 0) {
+					AddressData.configure(directory.toString(), false);
+				}
+				super.write(bytes, offset, length);
+			}
+		};
+		try {
+			ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> response.getBody().writeTo(output));
+			assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
+		} finally {
+			AddressData.configure(null, false);
+		}
+		String written = output.toString(StandardCharsets.UTF_8);
+		assertTrue(written.startsWith("[{"), written);
+		assertFalse(written.endsWith("]"));
+	}
+
+	@Test
+	public void constrainedBatchShouldOnlyHoldRequestedValues() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses?country=USA&count=500&seed=5&state=tx&city=pittsburgh&postalPrefix=78"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].city", everyItem(is("Pittsburgh"))))
+				.andExpect(jsonPath("$[*].postalCode", everyItem(matchesPattern("78\\d{3}")))).andReturn();
+		for (JsonNode address : objectMapper.readTree(result.getResponse().getContentAsByteArray())) {
+			assertTrue("Texas".equalsIgnoreCase(address.path("state").asText()) || "TX".equalsIgnoreCase(address.path("stateCode").asText()), address.toString());
+		}
+		this.mockMvc.perform(get("/randomizer/addresses?country=USA&count=500&seed=5&state=tx&city=pittsburgh&postalPrefix=78"))
+				.andExpect(content().bytes(result.getResponse().getContentAsByteArray()));
+	}
+
+	@Test
+	public void invalidConstraintsShouldBeRejected() throws Exception {
+		this.mockMvc.perform(get("/randomizer/addresses?country=USA&state=Atlantis")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(get("/randomizer/addresses?country=USA&city=Atlantis")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(get("/randomizer/addresses?country=CAN&postalPrefix=K1AB")).andExpect(status().isBadRequest());
+		this.mockMvc.perform(get("/randomizer/address?state=TX")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void constraintsShouldRequireGeneratorSupport() {
+		CountryAddressGenerator unconstrained = new CountryAddressGenerator() {
+			@Override
+			public String getCountryCode() {
+				return AddressData.USA;
+			}
+
+			@Override
+			public Address createAddress(RandomSource random) {
+				return new AddressUSA(random);
+			}
+		};
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+				() -> AddressRequestValidator.requireConstraintSupport(unconstrained));
+		assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+		for (String country : CountryRegistry.getImplementedCountryCodes()) {
+			AddressRequestValidator.requireConstraintSupport(CountryRegistry.lookup(country));
+		}
+	}
+
+	@Test
+	public void weightedValuesShouldBeSampledByWeight(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("weights.bin");
+		Dataset.compile(List.of("Weights"), name -> new ByteArrayInputStream("Heavy|99\nLight\nNever | 0\n".getBytes(StandardCharsets.UTF_8)), file);
+		Dataset dataset = Dataset.map(file);
+		assertEquals("Never", dataset.getTable("Weights").get(2));
+		float[] weights = dataset.getWeights("Weights");
+		assertArrayEquals(new float[]{99, 1, 0}, weights);
+		AliasTable alias = AliasTable.of(weights);
+		RandomSource random = RandomSource.forIndex(7, 0);
+		int[] counts = new int[3];
+		for (int i = 0; i < 100_000; i++) {
+			counts[alias.sample(random)]++;
+		}
+		assertEquals(0, counts[2]);
+		assertTrue(counts[1] > 700 && counts[1] < 1300, "light " + counts[1]);
+		//shipped weights are stripped from the values and only used when weighted sampling is enabled
+		assertEquals("Alabama", Dataset.fromText(List.of("StateNames_USA"), AddressData::openDataFile).getTable("StateNames_USA").get(0));
+		assertFalse(AddressData.getCountryData(AddressData.USA).getStates().getNames().isWeighted());
+		assertTrue(new CountryData(AddressData.USA, Dataset.fromText(AddressData.getDataFileNames(AddressData.USA), AddressData::openDataFile), true)
+				.getStates().getNames().isWeighted());
+	}
+
+	@Test
+	public void weightWithoutValueShouldBeRejected() throws Exception {
+		Dataset dataset = Dataset.fromText(List.of("Names"), name -> new ByteArrayInputStream("A|B\nC|\nD|2\n".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(List.of("A|B", "C|", "D"), List.of(dataset.getTable("Names").get(0), dataset.getTable("Names").get(1),
+				dataset.getTable("Names").get(2)));
+		assertArrayEquals(new float[]{1, 1, 2}, dataset.getWeights("Names"));
+		IOException exception = assertThrows(IOException.class, () -> Dataset.fromText(List.of("Names"),
+				name -> new ByteArrayInputStream("A\n\n |5\n".getBytes(StandardCharsets.UTF_8))));
+		assertEquals("Names has a weight without a value on line 3: |5", exception.getMessage());
+	}
+
+	@Test
+	public void exportShouldWriteRestartableSeededPartitions(@TempDir Path directory) throws Exception {
+		ExportJobService exports = new ExportJobService(directory.toString(), 2, 16, 1000, 0, AddressMetrics.DISABLED);
+		try {
+			ExportJob job = exports.submit("NLD", 2500, 21L, "ndjson", "gzip");
+			assertEquals(3, job.getPartitions());
+			awaitExport(job);
+			assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+			assertEquals(2500, job.getWritten());
+			//partition 1 holds the addresses at offset 1000 of the seeded run
+			byte[] bulk = this.mockMvc.perform(get("/randomizer/addresses?country=NLD&count=1000&seed=21&offset=1000"))
+					.andReturn().getResponse().getContentAsByteArray();
+			List<String> lines = readGzipLines(exports.getPartitionFile(job.getId(), 1));
+			assertEquals(1000, lines.size());
+			assertEquals(objectMapper.readTree(bulk).get(0), objectMapper.readTree(lines.get(0)));
+
+			ExportJob csv = exports.submit("USA", 1500, 5L, "csv", "none");
+			awaitExport(csv);
+			List<String> records = Files.readAllLines(exports.getPartitionFile(csv.getId(), 1));
+			assertEquals("house,street,postalCode,city,county,state,stateCode,country,countryCode", records.get(0));
+			assertEquals(501, records.size());
+			assertTrue(records.get(1).endsWith(",\"USA\""), records.get(1));
+
+			//a partition lost by a crash is written again when the reloaded job is restarted
+			Files.delete(exports.getPartitionFile(job.getId(), 2));
+			exports.destroy();
+			exports = new ExportJobService(directory.toString(), 2, 16, 1000, 0, AddressMetrics.DISABLED);
+			ExportJob reloaded = exports.get(job.getId());
+			assertEquals(ExportJob.Status.CANCELLED, reloaded.getStatus());
+			assertEquals(2, reloaded.getCompletedPartitions());
+			awaitExport(exports.restart(job.getId(), null));
+			assertEquals(ExportJob.Status.COMPLETED, reloaded.getStatus());
+			assertEquals(500, readGzipLines(exports.getPartitionFile(job.getId(), 2)).size());
+		} finally {
+			exports.destroy();
+		}
+	}
+
+	@Test
+	public void binaryFormatsShouldMatchJson() throws Exception {
+		JsonNode expected = objectMapper.readTree(this.mockMvc.perform(get("/randomizer/addresses?seed=17&count=500"))
+				.andReturn().getResponse().getContentAsByteArray());
+		ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+		ObjectMapper smile = new ObjectMapper(new SmileFactory());
+
+		byte[] body = this.mockMvc.perform(get("/randomizer/addresses?seed=17&count=500").accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected, cbor.readTree(body));
+		body = this.mockMvc.perform(get("/randomizer/address?seed=17").accept(AddressController.APPLICATION_SMILE))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected.get(0), smile.readTree(body));
+		body = this.mockMvc.perform(get("/randomizer/addresses?seed=17&count=500").accept(AddressController.APPLICATION_PROTOBUF))
+				.andExpect(status().isOk()).andExpect(content().contentType(AddressController.APPLICATION_PROTOBUF))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected, readProtobufAddresses(body));
+		body = this.mockMvc.perform(get("/randomizer/address?seed=17").accept(AddressController.APPLICATION_PROTOBUF))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected.get(0), readProtobufAddress(ByteBuffer.wrap(body)));
+
+		MvcResult result = this.mockMvc.perform(get("/randomizer/addresses/stream?seed=17&count=500").accept(AddressController.APPLICATION_PROTOBUF))
+				.andExpect(request().asyncStarted()).andReturn();
+		body = this.mockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected, readProtobufAddresses(body));
+		result = this.mockMvc.perform(get("/randomizer/addresses/stream?seed=17&count=500").accept(MediaType.APPLICATION_CBOR))
+				.andExpect(request().asyncStarted()).andReturn();
+		body = this.mockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected, cbor.readTree(body));
+		result = this.mockMvc.perform(get("/randomizer/addresses/stream?seed=17&count=500").accept(AddressController.APPLICATION_SMILE))
+				.andExpect(request().asyncStarted()).andReturn();
+		body = this.mockMvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsByteArray();
+		assertEquals(expected, smile.readTree(body));
+	}
+
+	private static final String[] PROTOBUF_FIELDS = {null, "house", "street", "postalCode", "city", "county", "state", "stateCode", "country", "countryCode"};
+
+	//decodes an AddressList message, whose only field is the repeated Address field 1
+	private static ArrayNode readProtobufAddresses(byte[] message) {
+		ArrayNode addresses = JsonNodeFactory.instance.arrayNode();
+		ByteBuffer buffer = ByteBuffer.wrap(message);
+		while (buffer.hasRemaining()) {
+			assertEquals(1 << 3 | 2, buffer.get());
+			int length = readVarint(buffer);
+			addresses.add(readProtobufAddress(buffer.slice(buffer.position(), length)));
+			buffer.position(buffer.position() + length);
+		}
+		return addresses;
+	}
+
+	//decodes an Address message, every field of which is a string
+	private static ObjectNode readProtobufAddress(ByteBuffer message) {
+		ObjectNode address = JsonNodeFactory.instance.objectNode();
+		while (message.hasRemaining()) {
+			int tag = readVarint(message);
+			assertEquals(2, tag & 7);
+			byte[] value = new byte[readVarint(message)];
+			message.get(value);
+			address.put(PROTOBUF_FIELDS[tag >>> 3], new String(value, StandardCharsets.UTF_8));
+		}
+		return address;
+	}
+
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	@Test
+	public void exportCountShouldBeLimitedByQueuedPartitions(@TempDir Path directory) throws Exception {
+		ExportJobService exports = new ExportJobService(directory.toString(), 1, 16, 1000, 0, AddressMetrics.DISABLED);
+		try {
+			ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> exports.submit("USA", 16_001, 1L, "csv", null));
+			assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+			assertTrue(exception.getReason().contains("16 partitions of 1000"), exception.getReason());
+		} finally {
+			exports.destroy();
+		}
+		assertThrows(IllegalArgumentException.class, () -> new ExportJobService(directory.toString(), 1, 16, 1000, 16_001, AddressMetrics.DISABLED));
+	}
+
+	@Test
+	public void rejectedExportShouldNotBeKept(@TempDir Path directory) throws Exception {
+		ExportJobService exports = new ExportJobService(directory.toString(), 1, 16, 1000, 0, AddressMetrics.DISABLED);
+		//the queue has room, but the shut down workers reject the partitions
+		exports.destroy();
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> exports.submit("USA", 2000, 1L, "csv", null));
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatusCode());
+		assertTrue(exports.getJobs().isEmpty());
+		ExportJobService restarted = new ExportJobService(directory.toString(), 1, 16, 1000, 0, AddressMetrics.DISABLED);
+		try {
+			assertTrue(restarted.getJobs().isEmpty());
+		} finally {
+			restarted.destroy();
+		}
+	}
+
+	@Test
+	public void columnarExportShouldWriteZstdArrowFiles(@TempDir Path directory) throws Exception {
+		ExportJobService exports = new ExportJobService(directory.toString(), 2, 16, 1000, 0, AddressMetrics.DISABLED);
+		try {
+			ExportJob job = exports.submit("CAN", 1500, 8L, "arrow", null);
+			assertEquals(ExportJob.Compression.ZSTD, job.getCompression());
+			awaitExport(job);
+			assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+			Path file = exports.getPartitionFile(job.getId(), 1);
+			assertEquals("part-00001.arrow", file.getFileName().toString());
+			JsonNode bulk = objectMapper.readTree(this.mockMvc.perform(get("/randomizer/addresses?country=CAN&count=500&seed=8&offset=1000"))
+					.andReturn().getResponse().getContentAsByteArray());
+			try (BufferAllocator allocator = new RootAllocator();
+				 ArrowFileReader reader = new ArrowFileReader(Files.newByteChannel(file), allocator, CommonsCompressionFactory.INSTANCE)) {
+				assertEquals(AddressArrowWriter.SCHEMA, reader.getVectorSchemaRoot().getSchema());
+				int rows = 0;
+				while (reader.loadNextBatch()) {
+					VectorSchemaRoot root = reader.getVectorSchemaRoot();
+					for (int row = 0; row < root.getRowCount(); row++, rows++) {
+						JsonNode address = bulk.get(rows);
+						for (FieldVector vector : root.getFieldVectors()) {
+							JsonNode value = address.get(vector.getName());
+							Object column = vector.getObject(row);
+							assertEquals(value == null || value.isNull() ? null : value.asText(), column == null ? null : column.toString(),
+									vector.getName() + " of row " + rows);
+						}
+					}
+				}
+				assertEquals(500, rows);
+			}
+
+			ExportJob ndjson = exports.submit("NLD", 1200, 3L, "ndjson", "zstd");
+			awaitExport(ndjson);
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new ZstdInputStream(Files.newInputStream(exports.getPartitionFile(ndjson.getId(), 1))), StandardCharsets.UTF_8))) {
+				assertEquals(200, reader.lines().count());
+			}
+			ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> exports.submit("CAN", 10, 1L, "arrow", "gzip"));
+			assertEquals(HttpStatus.BAD_REQUEST, exception.getStatusCode());
+		} finally {
+			exports.destroy();
+		}
+	}
+
+	private static void awaitExport(ExportJob job) throws InterruptedException {
+		for (int i = 0; i < 1000 && (job.getStatus() == ExportJob.Status.QUEUED || job.getStatus() == ExportJob.Status.RUNNING); i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static List<String> readGzipLines(Path file) throws Exception {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.toList());
+		}
+	}
 }